@@ -0,0 +1,101 @@
+'''
+    Reset/step environment for training stock investors without restarting
+    the simulator for every episode.
+
+    Start the Java side once (after ./build has compiled the classes):
+
+      java -cp "classes:lib/*" --module-path $PATH_TO_FX \
+           --add-modules=javafx.fxml core.SimulationEnvironment
+
+    then create a ThreadneedleEnv and call reset()/step() as often as
+    needed. Layouts must match SimulationEnvironment.java.
+'''
+import random as r
+import struct
+from types import SimpleNamespace
+
+from py4j.java_gateway import JavaGateway
+
+STATE_FORMAT = ">6q"
+STATE_SIZE = struct.calcsize(STATE_FORMAT)
+ACTIONS = ["sellShares", "liquidate", "buyShares", "requestLoan", "wait"]
+
+
+def decode_states(data):
+    states = []
+    for i in range(len(data) // STATE_SIZE):
+        fields = struct.unpack_from(STATE_FORMAT, data, i * STATE_SIZE)
+        states.append(SimpleNamespace(deposit=fields[0], debt=fields[1],
+                                      shareHolding=fields[2], bidPrice=fields[3],
+                                      askPrice=fields[4], isZombie=fields[5] != 0))
+    return states
+
+
+class ThreadneedleEnv(object):
+    def __init__(self, config="configs/dl_stocksim.batch"):
+        self.gateway = JavaGateway()
+        self.env = self.gateway.entry_point
+        self.config = config
+        self.agent_ids = []
+
+    def reset(self, seed=0, config=None):
+        if config is not None:
+            self.config = config
+        states = decode_states(self.env.reset(seed, self.config))
+        ids = self.env.getAgentIds()
+        self.agent_ids = ids.split(",") if ids else []
+        return states
+
+    # actions: one action name or code per agent, in agent_ids order
+    def step(self, actions):
+        codes = bytes(a if isinstance(a, int) else ACTIONS.index(a) for a in actions)
+        result = self.env.step(codes)
+        rewards = list(struct.unpack(f">{len(self.agent_ids)}q", result.getRewards()))
+        return decode_states(result.getObservations()), rewards, result.isDone()
+
+    def close(self):
+        self.gateway.close()
+
+
+class VectorThreadneedleEnv(object):
+    '''
+    N simulations stepped in lockstep, served by
+
+      java ... core.VectorEnvironment <n> <config> [seed]
+
+    States and rewards are flat lists over all agents in all environments.
+    Finished environments are reset automatically, so the states returned
+    with done set are the first states of the next episode.
+    '''
+    def __init__(self):
+        self.gateway = JavaGateway()
+        self.env = self.gateway.entry_point
+        self.agent_ids = []
+
+    def reset(self):
+        states = decode_states(self.env.reset())
+        self.agent_ids = [ids.split(",") if ids else [] for ids in self.env.getAgentIds().split(";")]
+        return states
+
+    def step(self, actions):
+        codes = bytes(a if isinstance(a, int) else ACTIONS.index(a) for a in actions)
+        result = self.env.step(codes)
+        rewards = result.getRewards()
+        rewards = list(struct.unpack(f">{len(rewards) // 8}q", rewards))
+        return decode_states(result.getObservations()), rewards, [d != 0 for d in result.getDones()]
+
+    def close(self):
+        self.gateway.close()
+
+
+if __name__ == "__main__":
+    env = ThreadneedleEnv()
+    for episode in range(100):
+        states = env.reset(seed=episode)
+        done, total, steps = False, 0, 0
+        while not done:
+            states, rewards, done = env.step([r.randrange(len(ACTIONS)) for _ in states])
+            total += sum(rewards)
+            steps += 1
+        print(f"episode {episode}: {steps} steps, total reward {total}")
+    env.close()
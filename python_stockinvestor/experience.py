@@ -0,0 +1,44 @@
+'''
+    Read experience logs written by ExperienceLog.java (see experience=
+    property of PythonStockInvestor) as numpy record arrays, without
+    unpickling or copying.
+
+    usage: python experience.py <prefix>
+'''
+import glob
+import sys
+
+import numpy as np
+
+MAGIC = 0x50584e54
+HEADER = 64
+
+
+def record_dtype(obs):
+    return np.dtype([("step", "<i4"), ("agent", "<i4"), ("action", "<i4"), ("unused", "<i4"),
+                     ("reward", "<i8"), ("obs", "<i8", (obs,)), ("next_obs", "<i8", (obs,))])
+
+
+def read_segment(path):
+    header = np.fromfile(path, dtype="<i4", count=4)
+    if header[0] != MAGIC:
+        raise ValueError(path + " is not an experience log")
+    count = int(np.fromfile(path, dtype="<i8", count=1, offset=16)[0])
+    dtype = record_dtype(int(header[3]))
+    assert dtype.itemsize == header[2]
+    return np.memmap(path, dtype=dtype, mode="r", offset=HEADER, shape=(count,))
+
+
+def segments(prefix):
+    for path in sorted(glob.glob(prefix + "-*.xp")):
+        yield read_segment(path)
+
+
+if __name__ == "__main__":
+    total = 0
+    for records in segments(sys.argv[1]):
+        total += len(records)
+        if len(records):
+            print(f"{len(records)} transitions, steps {records['step'].min()}-{records['step'].max()}, "
+                  f"mean reward {records['reward'].mean():.2f}")
+    print(f"{total} transitions")
@@ -0,0 +1,83 @@
+'''
+    Shared memory peer for PythonStockInvestor, used when the investors
+    are configured with shm=<file> instead of connecting through py4j.
+
+    Java writes one fixed size record of int64 per investor (in order of
+    creation) and bumps seq; we write one int32 action code per investor
+    and set ack = seq. Layout must match SharedMemoryBridge.java.
+
+    usage: python shm_agent.py <file>
+'''
+import mmap
+import os
+import random as r
+import sys
+import time
+
+import numpy as np
+
+MAGIC = 0x4d534e54
+HEADER = 64
+ACTIONS = ["sellShares", "liquidate", "buyShares", "requestLoan", "wait"]
+
+# observation fields
+DEPOSIT, DEBT, SHAREHOLDING, BIDPRICE, ASKPRICE, ZOMBIE, LASTPRICE, BIDS, ASKS, STEP = range(10)
+
+
+class SharedMemory(object):
+    def __init__(self, path, timeout=60):
+        # wait for Java to create and initialise the file
+        deadline = time.time() + timeout
+        while True:
+            if os.path.exists(path) and os.path.getsize(path) > HEADER:
+                self.file = open(path, "r+b")
+                self.mm = mmap.mmap(self.file.fileno(), 0)
+                if np.frombuffer(self.mm, dtype="<i4", count=1)[0] == MAGIC:
+                    break
+                self.mm.close()
+                self.file.close()
+            if time.time() > deadline:
+                raise TimeoutError("no simulation found at " + path)
+            time.sleep(0.1)
+
+        header = np.frombuffer(self.mm, dtype="<i4", count=HEADER // 4)
+        self.capacity = int(header[2])
+        self.fields = int(header[3])
+        self.header = header
+        self.seq = np.frombuffer(self.mm, dtype="<i8", count=1, offset=16)
+        self.ack = np.frombuffer(self.mm, dtype="<i8", count=1, offset=24)
+
+        # zero copy views of the observation and action regions
+        self.obs = np.frombuffer(self.mm, dtype="<i8", count=self.capacity * self.fields,
+                                 offset=HEADER).reshape(self.capacity, self.fields)
+        self.actions = np.frombuffer(self.mm, dtype="<i4", count=self.capacity,
+                                     offset=HEADER + self.obs.nbytes)
+
+    def wait(self, last):
+        # returns the next seq, or None once the simulation has closed
+        spins = 0
+        while int(self.seq[0]) == last:
+            if self.header[10] != 0:
+                return None
+            spins += 1
+            if spins > 10000:
+                time.sleep(0.00005)
+        return int(self.seq[0])
+
+    def run(self, policy):
+        seq = int(self.seq[0])
+        while True:
+            seq = self.wait(seq)
+            if seq is None:
+                break
+            step, count = int(self.header[8]), int(self.header[9])
+            self.actions[:count] = policy(step, self.obs[:count])
+            self.ack[0] = seq
+
+
+def random_policy(step, obs):
+    return np.array([r.randrange(len(ACTIONS)) for _ in range(len(obs))], dtype="<i4")
+
+
+if __name__ == "__main__":
+    SharedMemory(sys.argv[1]).run(random_policy)
@@ -2,6 +2,8 @@ from logging import debug
 import random as r
 import pickle
 import os
+import struct
+from types import SimpleNamespace
 
 '''
     STATE
@@ -13,6 +15,11 @@ import os
 '''
 STATEGAP = 5
 
+# Batched state layout and action codes, must match PythonStockInvestor.java
+STATE_FORMAT = ">6q"
+STATE_SIZE = struct.calcsize(STATE_FORMAT)
+ACTIONS = ["sellShares", "liquidate", "buyShares", "requestLoan", "wait"]
+
 class PythonStockInvestorAgent(object):
     def __init__(self, name):
         self._initialize_agent(name)
@@ -189,6 +196,19 @@ class PythonStockInvestor(object):
             self.agents[agentid] = PythonStockInvestorAgent(agentid)
         return self.agents[agentid].getNextAction(step, state)
 
+    # called once per step with the state of every agent, see
+    # PythonStockInvestor.java for the layout of states
+    def getNextActions(self, step, agentids, states):
+        ids = agentids.split(",") if agentids else []
+        actions = bytearray(len(ids))
+        for i, agentid in enumerate(ids):
+            fields = struct.unpack_from(STATE_FORMAT, states, i * STATE_SIZE)
+            state = SimpleNamespace(deposit=fields[0], debt=fields[1],
+                                    shareHolding=fields[2], bidPrice=fields[3],
+                                    askPrice=fields[4], isZombie=fields[5] != 0)
+            actions[i] = ACTIONS.index(self.getNextAction(step, agentid, state))
+        return bytes(actions)
+
     class Java:
         implements = ["core.MyStockInvestor$IPythonStockInvestor"]
 
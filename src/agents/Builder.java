@@ -136,20 +136,20 @@ public class Builder extends Company
 
 
     if(!building && getDebt() <= 0 
-       && markets.getMarket(product).getTotalItems() < 2)
+       && market.getTotalItems() < 2)
     {
        // total workers required is total labour divided by the length of
        // of time the builder should take to build the house.
 
        totalWorkers = labourInput/buildTime;
 
-       if(((LabourMarket)markets.getMarket("Labour")).totalAvailableWorkers() 
+       if(getLabourMarket().totalAvailableWorkers() 
                                                               >= totalWorkers)
        {
          // Work out total cost of building, and request a loan
          //    labourInput is total labour required - each labourInput
          //    costs the salary price for that round. 
-         labourcost  = markets.getMarket("Labour").getAskPrice() * labourInput; 
+         labourcost  = getLabourMarket().getAskPrice() * labourInput; 
 
 //         labourcost = 50 * labourInput;
          interestRate= getBank().requestInterestRate(BaselWeighting.CONSTRUCTION);
@@ -174,11 +174,11 @@ System.out.println(name + " req loan for " + totalLoan  + "/" + buildTime*2);
                 // will slightly increase cost of the building if it happens
                 // due to additional interest payments
                 Person worker = 
-                  hireEmployee(markets.getMarket("Labour").getAskPrice(), 
+                  hireEmployee(getLabourMarket().getAskPrice(), 
                                getBank(), null);
                 if(worker == null)
                 {
-                   System.out.println("DBG: " + getName() + " failed to hire @" +  markets.getMarket("Labour").getAskPrice());
+                   System.out.println("DBG: " + getName() + " failed to hire @" +  getLabourMarket().getAskPrice());
                    break;
                 }
             }
@@ -202,7 +202,7 @@ System.out.println(name + " req loan for " + totalLoan  + "/" + buildTime*2);
        house = new Widget(product, HOUSE_TTL, 1);
        s_quantityProduced.add(house.quantity());
 
-       long marketPrice = markets.getMarket(product).getBidPrice();
+       long marketPrice = market.getBidPrice();
 
        // totalCost += getAccount().getTotalInterestPaid();
 
@@ -215,7 +215,7 @@ System.out.println(name + " req loan for " + totalLoan  + "/" + buildTime*2);
           worker.desiredSalary = worker.getSalary();
        }
 
-       long price = markets.getMarket(product).sell(house, 
+       long price = market.sell(house, 
                                          totalCost + inflation, getAccount());
 
        //System.out.println("On market: " + markets.getMarket(product).getTotalItems());
@@ -67,7 +67,8 @@ public class Farm extends Company
 
     s_quantityProduced = Statistic.getStatistic(product + "-produced",
                                                 "production", COUNTER);
-    s_quantitySold = new Statistic(Id + ":q sold", COUNTER);
+    s_quantitySold = new Statistic(Id + ":q sold", COUNTER)
+                         .addConsumer(Statistic.Consumer.MODEL);
 
   }
 
@@ -58,7 +58,7 @@ public class WorkBank extends Bank
 
       // Hire people if there are sufficient funds.
 
-      long labourcost = markets.getMarket("Labour").getAskPrice();
+      long labourcost = getLabourMarket().getAskPrice();
 
       if(employees.size() * gl.ledger("interest_income").total()
                                    > labourcost * 12 * employees.size())
@@ -220,7 +220,7 @@ public class ChartController extends Stage implements Initializable
 
     if (chart != null)
     {
-      chart.enabled = enable;
+      chart.setEnabled(enable);
     }
     else
       System.out.println("No chart registered with name: " + chartname);
@@ -349,7 +349,7 @@ public class ChartController extends Stage implements Initializable
   {
     for (StepChart chart : charts.values())
     {
-      chart.enabled = false;
+      chart.setEnabled(false);
       flowpane.getChildren().remove(chart);
     }
   }
@@ -359,10 +359,10 @@ public class ChartController extends Stage implements Initializable
   {
     disableAllCharts();
 
-    charts.get("money").enabled = true;
-    charts.get("newbanklending").enabled = true;
-    charts.get("totaldefaults").enabled = true;
-    charts.get("reserves").enabled = true;
+    charts.get("money").setEnabled(true);
+    charts.get("newbanklending").setEnabled(true);
+    charts.get("totaldefaults").setEnabled(true);
+    charts.get("reserves").setEnabled(true);
 
 
     for (StepChart chart : charts.values())
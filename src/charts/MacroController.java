@@ -194,7 +194,7 @@ public class MacroController extends Stage implements Initializable
 
     if (chart != null)
     {
-      chart.enabled = enable;
+      chart.setEnabled(enable);
     }
     else
       System.out.println("No chart registered with name: " + chartname);
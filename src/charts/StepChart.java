@@ -39,6 +39,7 @@ public class StepChart extends LineChart
   @FXML public String   group;      // Group charts for display
 
   public boolean enabled = true;    // Whether chart is being displayed or not
+                                    // (set with setEnabled())
 
   private      StepSeries sumSeries;  // Sum of series on graph
   private long x            = 0;      // Current x value for graph
@@ -226,6 +227,9 @@ public class StepChart extends LineChart
     {
       s.series.getData().clear(); // clear the underlying list
       String name = s.stat.name;
+      if (enabled)
+        s.stat.removeConsumer(Statistic.Consumer.CHART);
+
       // get updated statistic
       s.stat = Statistic.getStatistic(s.stat.name, s.stat.group, s.stat.type);
 
@@ -234,6 +238,8 @@ public class StepChart extends LineChart
         throw new RuntimeException("Error: No statistic matching "
                                    + name);
       }
+      if (enabled)
+        s.stat.addConsumer(Statistic.Consumer.CHART);
     }
 
     NumberAxis xAxis = (NumberAxis) getXAxis();
@@ -289,7 +295,11 @@ public class StepChart extends LineChart
       if (stat == null)
         sumSeries = new StepSeries(s, null);
       else
+      {
+        if (enabled)
+          stat.addConsumer(Statistic.Consumer.CHART);
         series.put(name, new StepSeries(s, stat));
+      }
 
       updateLegend();
     }
@@ -403,7 +413,26 @@ public class StepChart extends LineChart
   public String getGroup(){return group;}
   public void   setGroup(String value){group = value;}
 
-  public void setEnabled(boolean value) { enabled = value; }
+  /**
+   * Show or hide chart. Its statistics are only declared to have a chart
+   * consumer while it is shown.
+   *
+   * @param value t/f chart is displayed
+   */
+  public void setEnabled(boolean value)
+  {
+    if (value == enabled)
+      return;
+
+    enabled = value;
+    for (StepSeries s : series.values())
+    {
+      if (enabled)
+        s.stat.addConsumer(Statistic.Consumer.CHART);
+      else
+        s.stat.removeConsumer(Statistic.Consumer.CHART);
+    }
+  }
 
   public boolean getEnabled() { return enabled; }
 
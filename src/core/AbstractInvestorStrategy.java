@@ -1,9 +1,5 @@
 package core;
 
-import java.util.ArrayList;
-import java.util.Collections;
-import java.util.List;
-
 /**
  * Program : Threadneedle
  * Author  : Throstur Thorarensen
@@ -12,7 +8,7 @@ import java.util.List;
 public abstract class AbstractInvestorStrategy implements InvestorStrategy {
 
   protected StockInvestor investor;
-  protected List<Long> purchases;
+  protected Position purchases;
   protected PurchaseStats pStats;
   protected double profitMargin = 1.05;
 
@@ -21,7 +17,7 @@ public abstract class AbstractInvestorStrategy implements InvestorStrategy {
     if (investor.getStrategy() != this) {
       investor.setStrategy(this);
     }
-    purchases = new ArrayList<>();
+    purchases = new Position();
   }
 
   public final void executeStrategy() {
@@ -30,16 +26,24 @@ public abstract class AbstractInvestorStrategy implements InvestorStrategy {
 
   @Override
   public void recordPurchase(long value) {
-    purchases.add(value);
+    recordPurchase(value, 1);
   }
 
   @Override
   public void recordSale(long value) {
-    if (purchases.isEmpty()) {
+    recordSale(value, 1);
+  }
+
+  @Override
+  public void recordPurchase(long value, long volume) {
+    purchases.add(value, volume);
+  }
+
+  @Override
+  public void recordSale(long value, long volume) {
+    if (purchases.remove(volume) < volume) {
       throw new RuntimeException("Selling something without recording previous purchase!?");
     }
-    Collections.sort(purchases);
-    purchases.remove(0);
   }
 
   public abstract void executeStrategy(InvestmentStrategyGoal goal);
@@ -53,7 +57,7 @@ public abstract class AbstractInvestorStrategy implements InvestorStrategy {
     high = pStats.getHigh();
     if (purchases.isEmpty())
       return;
-    average /= purchases.size();
+    average /= purchases.getQuantity();
 
     long price = (long) (average * profitMargin);
 
@@ -65,7 +69,7 @@ public abstract class AbstractInvestorStrategy implements InvestorStrategy {
     if (pStats == null) {
       pStats = new PurchaseStats().invoke();
     }
-    long price = (long) ((1 / profitMargin) * pStats.getTotal() / purchases.size());
+    long price = (long) ((1 / profitMargin) * pStats.getTotal() / purchases.getQuantity());
     investor.sellIfBelow(price);
   }
 
@@ -99,11 +103,9 @@ public abstract class AbstractInvestorStrategy implements InvestorStrategy {
     }
 
     public PurchaseStats invoke() {
-      for (Long price : purchases) {
-        total += price;
-        high = Math.max(high, price);
-        low  = Math.min(low,  price);
-      }
+      total = purchases.getTotal();
+      high  = purchases.getHigh();
+      low   = purchases.getLow();
       return this;
     }
   }
@@ -13,6 +13,7 @@ package core;
 
 import javafx.collections.*;
 
+import java.util.*;
 import java.util.concurrent.*;
 
 import static base.Base.*;
@@ -36,6 +37,18 @@ public class Account
   public ConcurrentHashMap<Integer, Loan> capital_loans; // Loans owned by acct
   private ObservableMap<Integer, Loan>     obsLoans;   // Notifications on loans
 
+  // Notified when the deposit in the account falls.
+  private ArrayList<DepositWatcher> watchers = null;
+
+  /**
+   * Interface for objects which need to know when an account's deposit
+   * falls, e.g. markets holding orders that the deposit must cover.
+   */
+  public interface DepositWatcher
+  {
+    void depositFell(Account account);
+  }
+
   /*
    * Account number's are issued from a high base to make them distinguishable
    * from agent id numbers when debugging. This puts an implicit limit on
@@ -457,6 +470,44 @@ public class Account
     return nextIdNo++;
   }
 
+  /**
+   * Add watcher to be notified when the deposit in this account falls.
+   *
+   * @param w watcher
+   */
+  public void addWatcher(DepositWatcher w)
+  {
+    if (watchers == null)
+      watchers = new ArrayList<>(2);
+
+    if (!watchers.contains(w))
+      watchers.add(w);
+  }
+
+  /**
+   * Remove deposit watcher.
+   *
+   * @param w watcher
+   */
+  public void removeWatcher(DepositWatcher w)
+  {
+    if (watchers != null)
+      watchers.remove(w);
+  }
+
+  /**
+   * Called by the ledger when the deposit has been reduced.
+   */
+  void depositFell()
+  {
+    if (watchers == null)
+      return;
+
+    // watchers may remove themselves
+    for (DepositWatcher w : new ArrayList<>(watchers))
+      w.depositFell(this);
+  }
+
   /**
    * Print the loans owed by, and owed to, this account.
    */
@@ -36,6 +36,7 @@ public abstract class Agent
   public Govt    govt;               // Provides the government/country id
   public Region  region = null;      // Optional region that agent belongs to
   public Markets markets;            // Markets used by this agent
+  LabourMarket   labourMarket;       // Cached from markets on first use
   public Integer Id;                 // unique id
 
   public Color myColor;              // Colour to use when drawing.
@@ -52,7 +53,7 @@ public abstract class Agent
 
   // Share holdings of this agent.
 
-  public  HashMap<String, Inventory> shareholdings = new HashMap<>();
+  public  HashMap<String, CapTable.Holding> shareholdings = new HashMap<>();
   private LinkedList<Treasury>       treasuries    = new LinkedList<>();
   public  LinkedList<Person> employees             = new LinkedList<>();
 
@@ -65,6 +66,9 @@ public abstract class Agent
 
   public Statistic s_income;           // Income last step (Agent controlled)
 
+  private EnumSet<Statistic.Consumer> incomeHeld          // Consumers of s_income
+    = EnumSet.noneOf(Statistic.Consumer.class);         // held by holdIncome()
+
   public long c_salariesPaid = 0L;      // Counter on salaries paid 
                                      
 
@@ -135,9 +139,12 @@ public abstract class Agent
     if(!regionName.equals(""))
        this.region = govt.regions.get(regionName);
 
+    // Agents in a region use their region's markets where available.
     if (govt != null)
     {
-      this.markets = govt.markets;
+      if (govt.markets != null)
+        this.markets = govt.markets.getShard(region);
+      this.labourMarket = null;
     }
     // Todo: sanitise this error message after testing
     else
@@ -285,6 +292,31 @@ public abstract class Agent
     accounts = a; // replace with new list
   }
 
+  /**
+   * Declare whether s_income is currently needed by a consumer, f.ex.
+   * while income tax is being collected, so that in lazy mode it is only
+   * rolled over while something uses it.
+   *
+   * @param c    Consumer type
+   * @param hold t/f s_income is needed
+   */
+  public void holdIncome(Statistic.Consumer c, boolean hold)
+  {
+    if (hold == incomeHeld.contains(c))
+      return;
+
+    if (hold)
+    {
+      incomeHeld.add(c);
+      s_income.addConsumer(c);
+    }
+    else
+    {
+      incomeHeld.remove(c);
+      s_income.removeConsumer(c);
+    }
+  }
+
   /**
    * Return amount in agent's primary deposit account with their Bank.
    *
@@ -433,12 +465,10 @@ public abstract class Agent
          {
 System.out.println(name + " liquidating " + debt.collateral.name);
 System.out.println("Remaining capital " + debt.getCapitalOutstanding());
-            long marketPrice = markets.getMarket(debt.collateral.name)
-                                      .getAskPrice();
+            Market market = markets.getMarket(debt.collateral.productId);
+            long marketPrice = market.getAskPrice();
 
-            markets.getMarket(debt.collateral.name)
-                   .sell(debt.collateral, marketPrice - 10,
-                         getAccount());
+            market.sell(debt.collateral, marketPrice - 10, getAccount());
             debt.collateral = null;
             debt.inDefault  = false;
             debt.inWriteOff = false;
@@ -536,36 +566,16 @@ System.out.println("Remaining capital " + debt.getCapitalOutstanding());
 
   public void addInvestment(Object investment)
   {
-    Inventory inv;
-
     /*
-     * Check if there is already a holding for this company, if not, create
-     * new inventory container for it.
+     * Shares are held in the issuer's cap table, so adding them is a
+     * transfer of ownership to this agent.
      */
     if (investment instanceof Shares)
     {
       Shares shares = (Shares) investment;
 
-      if ((inv = shareholdings.get(shares.name)) == null)
-      {
-        inv = new Inventory(shares.name, shares.hasTTL(), false);
-        inv.add(shares);
-
-        shareholdings.put(shares.name, inv);
-      }
-      else
-      {
-        inv.add(shares);
-
-      /*
-       * The inventory will add the shares to an existing container if
-       * one is available, if this occurs, then the now empty Shares
-       * widget needs to be removed from the masterlist, at which
-       * point gc should take over.
-       */
-        if (shares.quantity == 0)
-          shares.masterList.remove(shares);
-      }
+      if (shares.owner != this)
+        shares.transfer(this);
     }
     else if (investment instanceof Treasury)
     {
@@ -587,10 +597,9 @@ System.out.println("Remaining capital " + debt.getCapitalOutstanding());
    */
   public long getShareholding(String name)
   {
-    if (shareholdings.get(name) != null)
-      return shareholdings.get(name).getTotalItems();
-    else
-      return 0;
+    CapTable.Holding h = shareholdings.get(name);
+
+    return h == null ? 0 : h.quantity;
   }
 
   /**
@@ -609,20 +618,14 @@ System.out.println("Remaining capital " + debt.getCapitalOutstanding());
     if (to == null)
       throw new NullPointerException("Share recipient is null!");
 
-    Inventory inv = shareholdings.get(name);
+    CapTable.Holding h = shareholdings.get(name);
 
-    if (inv == null)
+    if (h == null || !h.table.transfer(this, to, quantity))
     {
       return 0; // Requested # of shares not available
     }
     else
     {
-      Shares s = (Shares) inv.remove(quantity);
-      if (s == null) {
-           throw new RuntimeException("No shares found in inventory!");
-      }
-      s.transfer(to);
-
       return quantity;
     }
   }
@@ -633,9 +636,9 @@ System.out.println("Remaining capital " + debt.getCapitalOutstanding());
   public void printShareholding()
   {
     System.out.println("\nAgent " + name + " shareholding");
-    for (Inventory inv : shareholdings.values())
+    for (CapTable.Holding h : shareholdings.values())
     {
-      System.out.println(inv.product + ": " + inv.getTotalItems());
+      System.out.println(h.getName() + ": " + h.quantity());
     }
     System.out.println("\n");
   }
@@ -866,7 +869,21 @@ System.out.println("Remaining capital " + debt.getCapitalOutstanding());
    */
   public Person hireEmployee()
   {
-    return hireEmployee(markets.getLabourMarket().getAskPrice(), null, null);
+    return hireEmployee(getLabourMarket().getAskPrice(), null, null);
+  }
+
+  /**
+   * Return the labour market used by this agent. The reference is cached
+   * on first use, since it is needed by most agents every step.
+   *
+   * @return labour market, or null if there isn't one
+   */
+  public LabourMarket getLabourMarket()
+  {
+    if (labourMarket == null && markets != null)
+      labourMarket = markets.getLabourMarket();
+
+    return labourMarket;
   }
 
   /**
@@ -892,12 +909,12 @@ System.out.println("Remaining capital " + debt.getCapitalOutstanding());
   public Person hireEmployee(long salary, Bank bank, String region)
   {
     Person p;
-    Inventory i = markets.getLabourMarket().hire(salary, bank, region);
+    Inventory i = getLabourMarket().hire(salary, bank, region);
 
     if ((i == null) || (i.getTotalItems() == 0))
     {
       DEBUG(this.name + " failed to hire @ " + salary + " available labour: "
-            + markets.getLabourMarket().totalAvailableWorkers());
+            + getLabourMarket().totalAvailableWorkers());
       return null;
     }
     else if (i.getTotalItems() == 1)
@@ -60,7 +60,7 @@ public class Bank extends Company
   public long currentIncome = 0;         // income  for capital purchase
 
   // Pref. share holders
-  public LinkedList<Shares> prefShares = new LinkedList<>();
+  public CapTable prefShares = null;
 
   private BaselWeighting riskw = new BaselWeighting(); // Basel risk information
   protected Hashtable<Integer, Account> internalAccounts; // Bank's accounts
@@ -192,7 +192,8 @@ public class Bank extends Company
     if (!(this instanceof CentralBank))
     {
       s_newLending   = Statistic.getStatistic(name + ":New Loans",
-                                   "newbanklending", COUNTER); // new lending
+                                   "newbanklending", COUNTER) // new lending
+                                   .addConsumer(Statistic.Consumer.MODEL);
       s_reserveCash  = Statistic.getStatistic(name + ":Reserves",
                                     "reserves", COUNTER);  // reserves
 
@@ -1910,9 +1911,8 @@ System.out.println("\n\n**** div : " + capitalDividend);
      * supplied share price.
 	 */
 
-    PreferentialShares shares = new PreferentialShares(this.name,
-                                                       noShares, sharePrice,
-                                                       this, this.prefShares);
+    if (prefShares == null)
+      prefShares = new CapTable(this.name, this, sharePrice, true);
 
     // debit cash credit capital
 
@@ -1920,7 +1920,7 @@ System.out.println("\n\n**** div : " + capitalDividend);
             gl.ledger("capital"), gl.ledger("capital").getAccount(),
             noShares * sharePrice, text);
 
-    shares.transfer(investor);
+    prefShares.issue(noShares, investor);
   }
 
   /**
@@ -0,0 +1,244 @@
+/* Program  : Threadneedle
+ *
+ * CapTable : Registry of the shares issued by a company, and who owns them.
+ *
+ * Date     : October 2026
+ *
+ * Comments: Each owner's holding is a single count, so transfers, holding
+ *           lookups and dividend payments don't create or search through
+ *           share objects. Owners also hold a reference to their holding
+ *           (see Agent.shareholdings) so that lookups by share name are
+ *           direct.
+ *
+ *           Holdings that fall to zero are removed, so that the registry
+ *           only grows with the number of current shareholders.
+ *
+ *           Preferential shares are held under the share name with a
+ *           ":pref" suffix, so that they are kept apart from ordinary
+ *           shares in the same company.
+ *
+ *           Shares objects are only created as views of a holding, for
+ *           code which needs them (see asShares()).
+ */
+package core;
+
+import java.util.*;
+
+public class CapTable
+{
+  public final String  name;            // Symbol for share
+  public final Company issuer;          // Company which issued shares
+  public final long    issuePrice;      // Price shares are issued at
+  public final boolean preferential;    // Preferential (vs ordinary) shares
+  public final String  key;             // Name of holding in shareholdings
+
+  private final LinkedHashMap<Agent, Holding> holdings = new LinkedHashMap<>();
+  private long total = 0;               // Total shares issued
+
+  /**
+   * A single owner's holding in a company.
+   */
+  public static final class Holding
+  {
+    final CapTable table;
+    final Agent    owner;
+    long           quantity;
+
+    Holding(CapTable table, Agent owner)
+    {
+      this.table = table;
+      this.owner = owner;
+    }
+
+    public CapTable getTable()
+    {
+      return table;
+    }
+
+    public String getName()
+    {
+      return table.name;
+    }
+
+    public Agent getOwner()
+    {
+      return owner;
+    }
+
+    public long quantity()
+    {
+      return quantity;
+    }
+
+    @Override
+    public String toString()
+    {
+      return table.name + " : " + quantity + " Issuer : " + table.issuer
+             + " Owner  : " + owner;
+    }
+  }
+
+  /**
+   * Constructor:
+   *
+   * @param name         Symbol for share
+   * @param issuer       Company issuing shares
+   * @param issuePrice   Amount issued for
+   * @param preferential t/f preferential shares
+   */
+  public CapTable(String name, Company issuer, long issuePrice,
+                  boolean preferential)
+  {
+    this.name = name;
+    this.issuer = issuer;
+    this.issuePrice = issuePrice;
+    this.preferential = preferential;
+    this.key = preferential ? name + ":pref" : name;
+  }
+
+  /**
+   * Issue new shares to the specified owner.
+   *
+   * @param quantity No. of shares to create
+   * @param owner    Initial owner of shares (normally the issuer)
+   */
+  public void issue(long quantity, Agent owner)
+  {
+    if (quantity <= 0)
+      throw new RuntimeException("Invalid quantity of Shares: " + quantity);
+
+    holding(owner).quantity += quantity;
+    total += quantity;
+  }
+
+  /**
+   * Transfer ownership of shares.
+   *
+   * @param from     Current owner
+   * @param to       New owner
+   * @param quantity No. of shares to transfer
+   * @return t/f transferred, fails if from doesn't own enough shares
+   */
+  public boolean transfer(Agent from, Agent to, long quantity)
+  {
+    if (quantity <= 0)
+      throw new RuntimeException("Invalid transfer quantity: " + quantity);
+    if (to == null)
+      throw new NullPointerException("Share recipient is null!");
+
+    Holding h = holdings.get(from);
+
+    if (h == null || h.quantity < quantity)
+      return false;
+
+    if (from == to)
+      return true;
+
+    h.quantity -= quantity;
+    if (h.quantity == 0)
+      release(h);
+
+    holding(to).quantity += quantity;
+
+    return true;
+  }
+
+  /**
+   * Return no. of shares owned by agent.
+   *
+   * @param owner Agent
+   * @return quantity
+   */
+  public long getHolding(Agent owner)
+  {
+    Holding h = holdings.get(owner);
+
+    return h == null ? 0 : h.quantity;
+  }
+
+  /**
+   * Return total no. of shares issued.
+   *
+   * @return quantity
+   */
+  public long getTotal()
+  {
+    return total;
+  }
+
+  /**
+   * Return no. of shares held by investors, i.e. not held by the issuer.
+   *
+   * @return quantity
+   */
+  public long getIssued()
+  {
+    return total - getHolding(issuer);
+  }
+
+  /**
+   * Return current holdings, in order of first acquisition.
+   *
+   * @return unmodifiable view of holdings
+   */
+  public Collection<Holding> getHolders()
+  {
+    return Collections.unmodifiableCollection(holdings.values());
+  }
+
+  /**
+   * Get the dividend payment that would be required for a holding at the
+   * supplied rate.
+   *
+   * @param h       Holding
+   * @param percent Percentage payout of issuePrice. (expressed as whole
+   *                integer i.e. 10%)
+   * @return amount to pay
+   */
+  public double getDividend(Holding h, double percent)
+  {
+    return (100 * h.quantity * percent * issuePrice) / 100.0;
+  }
+
+  /**
+   * Return the current holdings as Shares, for code which needs them. The
+   * Shares are a snapshot of the holdings - ownership only changes through
+   * transfer().
+   *
+   * @return list of Shares, one per holding
+   */
+  public List<Shares> asShares()
+  {
+    ArrayList<Shares> list = new ArrayList<>(holdings.size());
+
+    for (Holding h : holdings.values())
+    {
+      if (preferential)
+        list.add(new PreferentialShares(this, h.owner, h.quantity));
+      else
+        list.add(new Shares(this, h.owner, h.quantity));
+    }
+    return list;
+  }
+
+  private Holding holding(Agent owner)
+  {
+    Holding h = holdings.get(owner);
+
+    if (h == null)
+    {
+      h = new Holding(this, owner);
+      holdings.put(owner, h);
+      owner.shareholdings.put(key, h);
+    }
+    return h;
+  }
+
+  private void release(Holding h)
+  {
+    holdings.remove(h.owner);
+
+    if (h.owner.shareholdings.get(key) == h)
+      h.owner.shareholdings.remove(key);
+  }
+}
@@ -40,7 +40,7 @@ public abstract class Company extends Agent
 
 
 
-  public LinkedList<Shares> sharesIssued = new LinkedList<>();
+  public CapTable capTable = null;      // Ordinary shares issued
 
   public Statistic s_quantitySold;      // Amount sold (people, hours of labour)
   public Statistic s_quantityProduced;  // Quantity produced
@@ -89,6 +89,7 @@ public abstract class Company extends Agent
     if (m == null)
       throw new RuntimeException("Null market in setMarkets");
     this.markets = m;
+    this.labourMarket = null;
 
     // Add market for companies product (this may replace old market)
 
@@ -235,7 +236,10 @@ public abstract class Company extends Agent
    */
   public void issueShares(long price, int amount)
   {
-    new Shares(this.name, amount, price, this, this.sharesIssued).transfer(this);
+    if (capTable == null)
+      capTable = new CapTable(this.name, this, price, false);
+
+    capTable.issue(amount, this);
   }
 
   
@@ -264,23 +268,24 @@ public abstract class Company extends Agent
    * @return t/f paid, or failed (insufficient funds)
    */
 
-  public boolean payDividend(double percent, LinkedList<Shares> shares)
+  public boolean payDividend(double percent, CapTable shares)
   {
     int total = 0;
 
     assert (percent >= 0) : "Negative dividend percentage: " + this.name;
 
+    if (shares == null)
+      return true;
+
     /*
      * Verify that there is enough money to make the payment
      */
-    for (Shares s : shares)
+    for (CapTable.Holding h : shares.getHolders())
     {
-      if ((s.owner != null) && (s.owner != this))
+      if (h.owner != this)
       {
-        total += s.getDividend(percent);
+        total += shares.getDividend(h, percent);
       }
-      else
-        System.out.println("Div: " + s + " " + this.name);
     }
 
     if (total > getDeposit())
@@ -295,14 +300,16 @@ public abstract class Company extends Agent
      * dividend payment this step.
      */
 
-    for (Shares s : shares)
+    for (CapTable.Holding h : shares.getHolders())
     {
-      if ((s.owner != this) && (int) s.getDividend(percent) > 0)
+      int dividend = (int) shares.getDividend(h, percent);
+
+      if ((h.owner != this) && dividend > 0)
       {
-        transfer((int) s.getDividend(percent), s.owner,
-                 (String.format("%.2f", percent) + "% Dividend on " + s.name));
+        transfer(dividend, h.owner,
+                 (String.format("%.2f", percent) + "% Dividend on " + shares.name));
 
-        System.out.println("Paid dividend " + s.getDividend(percent));
+        System.out.println("Paid dividend " + dividend);
       }
     }
     return true;
@@ -311,19 +318,15 @@ public abstract class Company extends Agent
   /**
    * Return total number of shares currently held by investors.
    *
-   * @param shares List of shares to return total of.
+   * @param shares Shares to return total of.
    * @return total number of shares held by investors
    */
-  public int getTotalSharesIssued(LinkedList<Shares> shares)
+  public int getTotalSharesIssued(CapTable shares)
   {
-    int total = 0;
+    if (shares == null)
+      return 0;
 
-    for (Shares s : shares)
-    {
-      if (s.issued())
-        total += s.quantity();
-    }
-    return total;
+    return (int) shares.getIssued();
   }
 
   // public long getQuantityProduced(){return s_quantityProduced.get();}
@@ -0,0 +1,217 @@
+/* Program  : Threadneedle
+ *
+ * ExperienceLog : Append only log of (observation, action, reward, next
+ *                 observation) transitions, for offline training of
+ *                 learning agents.
+ *
+ * Date     : October 2026
+ *
+ * Comments : Transitions are written as fixed size little endian records
+ *            into memory mapped segment files, <prefix>-<n>.xp. When a
+ *            segment is full the next one is started, and if a maximum
+ *            no. of segments is set the oldest is deleted. Numbering
+ *            continues after any segments already present, f.ex. from an
+ *            earlier run, and existing files are never overwritten.
+ *
+ *            Segment header (HEADER bytes):
+ *              0  int  magic ('TNXP')
+ *              4  int  version
+ *              8  int  record size in bytes
+ *             12  int  observation size in longs
+ *             16  long no. of records written, updated after each record
+ *
+ *            Record:
+ *              int  step, int agent id, int action, int unused,
+ *              long reward, long[obs] observation, long[obs] next
+ *              observation
+ */
+package core;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.util.ArrayDeque;
+
+public class ExperienceLog
+{
+  public static final int MAGIC   = 0x50584e54;      // "TNXP" little endian
+  public static final int VERSION = 1;
+  public static final int HEADER  = 64;
+
+  private static final int COUNT = 16;
+
+  private final String prefix;
+  private final int    observation;                  // longs per observation
+  private final int    recordSize;
+  private final int    capacity;                     // records per segment
+  private final int    keep;                         // segments kept, 0 = all
+
+  private final ArrayDeque<File> segments = new ArrayDeque<>();
+  private int              segment = 0;
+  private RandomAccessFile file    = null;
+  private MappedByteBuffer buffer  = null;
+  private long             count   = 0;              // records in segment
+
+  /**
+   * Constructor:
+   *
+   * @param prefix      Path prefix for segment files
+   * @param observation No. of longs in an observation
+   * @param capacity    Records per segment
+   * @param keep        Max. no. of segments kept (0 for no limit)
+   */
+  public ExperienceLog(String prefix, int observation, int capacity, int keep)
+  {
+    this.prefix = prefix;
+    this.observation = observation;
+    this.recordSize = 24 + 2 * observation * Long.BYTES;
+    this.capacity = capacity;
+    this.keep = keep;
+
+    File     path  = new File(prefix).getAbsoluteFile();
+    String   start = path.getName() + "-";
+    String[] names = path.getParentFile() == null ? null : path.getParentFile().list();
+
+    if (names != null)
+    {
+      for (String n : names)
+      {
+        if (n.startsWith(start) && n.endsWith(".xp"))
+        {
+          try
+          {
+            segment = Math.max(segment, Integer.parseInt(
+                        n.substring(start.length(), n.length() - 3)) + 1);
+          }
+          catch (NumberFormatException e)
+          {
+            // Not one of ours
+          }
+        }
+      }
+    }
+  }
+
+  /**
+   * Return path prefix for segment files.
+   *
+   * @return prefix
+   */
+  public String getPrefix()
+  {
+    return prefix;
+  }
+
+  /**
+   * Append a transition.
+   *
+   * @param step   Step the action was taken in
+   * @param agent  Agent id
+   * @param obs    Observation the action was taken on
+   * @param action Action code
+   * @param reward Reward for action
+   * @param next   Observation following the action
+   */
+  public void append(int step, int agent, long[] obs, int action, long reward,
+                     long[] next)
+  {
+    if (buffer == null || count == capacity)
+      rotate();
+
+    int pos = (int) (HEADER + count * recordSize);
+
+    buffer.putInt(pos, step);
+    buffer.putInt(pos + 4, agent);
+    buffer.putInt(pos + 8, action);
+    buffer.putLong(pos + 16, reward);
+    pos += 24;
+
+    for (int i = 0; i < observation; i++, pos += Long.BYTES)
+      buffer.putLong(pos, obs[i]);
+    for (int i = 0; i < observation; i++, pos += Long.BYTES)
+      buffer.putLong(pos, next[i]);
+
+    buffer.putLong(COUNT, ++count);
+  }
+
+  /**
+   * Finish the current segment.
+   */
+  public void close()
+  {
+    if (buffer != null)
+    {
+      buffer.force();
+      buffer = null;
+    }
+
+    if (file != null)
+    {
+      try
+      {
+        file.close();
+      }
+      catch (IOException e)
+      {
+        System.err.println("Failed to close experience log: " + e);
+      }
+      file = null;
+    }
+  }
+
+  private void rotate()
+  {
+    close();
+
+    File f    = null;
+    long size = HEADER + (long) capacity * recordSize;
+
+    if (size > Integer.MAX_VALUE)
+      throw new IllegalArgumentException("Experience log segment too large: " + size);
+
+    try
+    {
+      // Create the segment atomically, so another writer with the same
+      // prefix can't claim the same name between the check and the open
+      while (true)
+      {
+        f = new File(String.format("%s-%06d.xp", prefix, segment++));
+        try
+        {
+          Files.createFile(f.toPath());
+          break;
+        }
+        catch (FileAlreadyExistsException e)
+        {
+          // Taken, try the next
+        }
+      }
+      file = new RandomAccessFile(f, "rw");
+      file.setLength(size);
+
+      buffer = file.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, size);
+      buffer.order(ByteOrder.LITTLE_ENDIAN);
+    }
+    catch (IOException e)
+    {
+      close();
+      throw new RuntimeException("Failed to create experience log " + f + ": " + e);
+    }
+
+    buffer.putInt(0, MAGIC);
+    buffer.putInt(4, VERSION);
+    buffer.putInt(8, recordSize);
+    buffer.putInt(12, observation);
+    buffer.putLong(COUNT, 0);
+    count = 0;
+
+    segments.add(f);
+    while (keep > 0 && segments.size() > keep)
+      segments.poll().delete();
+  }
+}
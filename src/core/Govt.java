@@ -36,6 +36,7 @@ public class Govt extends Agent
   @Expose public int maxCivilServants    = 0; // As percentage of total pop.
   @Expose public double treasuryRate     = 10.0; // Treasury interest rate
   @Expose public int minWage             = 1; // Minimum wage
+  @Expose public boolean marketArbitrage = false; // Cross-region arbitrage
 
   public static String CB_LEDGERS = "src/resources/ledgers/cb.def"; // central Bank ledger
                                                       // definition
@@ -49,6 +50,10 @@ public class Govt extends Agent
 
   public List<StockExchange> stockExchanges = new ArrayList<>();
 
+  // Lookup of stock exchanges, and of listed markets, by name
+  private HashMap<String, StockExchange> exchangeIndex = new HashMap<>();
+  private HashMap<String, StockMarket>   listingIndex  = new HashMap<>();
+
   protected Account incomeTaxAccount; // Account to receive tax
 
   public CentralBank centralbank    = null; // central Bank for this currency
@@ -588,6 +593,29 @@ public class Govt extends Agent
   public void registerStockExchange(StockExchange se)
   {
     stockExchanges.add(se);
+    exchangeIndex.putIfAbsent(se.name, se);
+  }
+
+  /**
+   * Record a stock market listed on one of this country's exchanges. If
+   * a name is listed more than once, the first listing is returned by
+   * getStockMarket().
+   *
+   * @param m Stock market
+   */
+  public void registerStockMarket(StockMarket m)
+  {
+    listingIndex.putIfAbsent(m.name, m);
+  }
+
+  public StockExchange getStockExchange(String name)
+  {
+    return exchangeIndex.get(name);
+  }
+
+  public StockMarket getStockMarket(String name)
+  {
+    return listingIndex.get(name);
   }
 
   // public void setInitialDeposit(int i){this.initialDeposit = i;}
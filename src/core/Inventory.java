@@ -25,6 +25,7 @@ public class Inventory
   private int growthBound = 1; // No of history steps for inventory behaviour
 
   public String  product;
+  public int     productId = ProductRegistry.NONE;
   public boolean lifetime;     // Does objective have a TTL?
   public boolean unique;       // Is object unique and unmergable i.e. human
 
@@ -38,7 +39,7 @@ public class Inventory
 
   public Inventory(String name, boolean lifetime, boolean unique)
   {
-    this.product = name;
+    setProduct(name);
     this.lifetime = lifetime;
     this.unique = unique;
   }
@@ -54,6 +55,17 @@ public class Inventory
     unique = true; // ditto
   }
 
+  /**
+   * Set the product held by this inventory.
+   *
+   * @param name Name of product
+   */
+  public void setProduct(String name)
+  {
+    this.product   = name;
+    this.productId = ProductRegistry.register(name);
+  }
+
   /**
    * Print out list of inventory contents.
    */
@@ -165,7 +177,7 @@ public class Inventory
 
   public void add(Widget w)
   {
-    if (!w.name.equals(product))
+    if (w.productId != productId)
     {
       throw new RuntimeException("Invalid Widget type in add " + w.name
                                  + " != " + this.product);
@@ -217,7 +229,7 @@ public class Inventory
 
   public void merge(Inventory toMergeInv)
   {
-    if (!this.product.equals(toMergeInv.product))
+    if (this.productId != toMergeInv.productId)
     {
       throw new RuntimeException("Invalid Widget type in add "
                                  + toMergeInv.product + " != " + product);
@@ -26,6 +26,7 @@ public class InvestmentCompany extends Company
 
   private StockExchange exchange = null;
   private InvestmentStrategy strategy = new DefaultInvestmentStrategy();
+  private HashMap<String, String> properties = new HashMap<>(); // For investor strategies
   public boolean bankrupt = false;
 
   /**
@@ -65,6 +66,7 @@ public class InvestmentCompany extends Company
     this.product = properties.get("product");
     this.offeredSalary = properties.get("offeredSalary") != null ? Long.parseLong(properties.get("offeredSalary")) : 1;
     this.exchange = StockExchange.findExchange(properties.get("exchange"), govt);
+    this.properties = properties;
 
     String className = properties.get("strategy") != null ? properties.get("strategy"): "default";
     try
@@ -234,12 +236,12 @@ public class InvestmentCompany extends Company
   public StockInvestor hireInvestor(long salary, String region) {
     StockInvestor investor;
 
-    Inventory inventory = markets.getLabourMarket().hire(salary, region,
+    Inventory inventory = getLabourMarket().hire(salary, region,
                                                          StockInvestor.class);
     if ((inventory == null) || inventory.getTotalItems() == 0)
     {
       DEBUG(this.name + " failed to hire @ " + salary + "labour: "
-            + markets.getLabourMarket().totalAvailableWorkers());
+            + getLabourMarket().totalAvailableWorkers());
       return null;
     }
     else if (inventory.getTotalItems() == 1)
@@ -258,7 +260,9 @@ public class InvestmentCompany extends Company
         investor.setInvestment(exchange.getFirstOrRandom(getCoverage()));
       }
 
-      investor.setStrategy(strategy.getInvestorStrategy(investor));
+      InvestorStrategy is = strategy.getInvestorStrategy(investor);
+      is.configure(properties);
+      investor.setStrategy(is);
 
       return investor;
     }
@@ -300,14 +304,14 @@ public class InvestmentCompany extends Company
   public String shareString() {
     StringBuilder sb = new StringBuilder();
     sb.append("\n");
-    for (Inventory inv : shareholdings.values())
+    for (CapTable.Holding h : shareholdings.values())
     {
-      long total = inv.getTotalItems();
+      long total = h.quantity();
       if (total == 0) continue;
-      sb.append(inv.product );
+      sb.append(h.getName() );
       sb.append( ": " );
       sb.append( String.format("%3d", total));
-      StockMarket m = StockExchange.findMarket(inv.product, govt);
+      StockMarket m = StockExchange.findMarket(h.getName(), govt);
       if ( m != null) {
         sb.append(" (valued at: ");
         sb.append(m.getBidPrice());
@@ -324,10 +328,10 @@ public class InvestmentCompany extends Company
   public long shareValue() {
     long value = 0;
 
-    for (Inventory inv : shareholdings.values()) {
-      StockMarket m = StockExchange.findMarket(inv.product, govt);
+    for (CapTable.Holding h : shareholdings.values()) {
+      StockMarket m = StockExchange.findMarket(h.getName(), govt);
       if (m != null) {
-        value += m.bidPrice * inv.getTotalItems();
+        value += m.bidPrice * h.quantity();
       }
     }
     return value;
@@ -335,8 +339,8 @@ public class InvestmentCompany extends Company
 
   public long totalOwnedShares() {
     long items = 0;
-    for (Inventory inv : shareholdings.values()) {
-      items += inv.getTotalItems();
+    for (CapTable.Holding h : shareholdings.values()) {
+      items += h.quantity();
     }
     return items;
   }
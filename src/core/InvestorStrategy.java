@@ -1,5 +1,7 @@
 package core;
 
+import java.util.Map;
+
 /**
  * Program : Threadneedle
  * Author  : Throstur Thorarensen
@@ -9,6 +11,27 @@ public interface InvestorStrategy {
 
   void recordPurchase(long value);
   void recordSale(long value);
+
+  default void recordPurchase(long value, long volume) {
+    for (long i = 0; i < volume; i++) {
+      recordPurchase(value);
+    }
+  }
+
+  default void recordSale(long value, long volume) {
+    for (long i = 0; i < volume; i++) {
+      recordSale(value);
+    }
+  }
+
+  /**
+   * Configure the strategy from the properties of the investment company
+   * using it. Strategies without settings ignore this.
+   *
+   * @param properties company properties
+   */
+  default void configure(Map<String, String> properties) {}
+
   void executeStrategy();
   void executeStrategy(InvestmentStrategyGoal goal);
 }
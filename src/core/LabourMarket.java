@@ -97,7 +97,15 @@ public class LabourMarket extends Market
   public void setProduct()
   {
      if(inventory.product == null)
-        inventory.product = this.product;
+     {
+        inventory.setProduct(this.product);
+        productId = inventory.productId;
+     }
+
+     // Regional labour markets report their own unemployment
+     if(!regionName.equals(""))
+        s_unemployed = Statistic.getStatistic(regionName + ":unemployed",
+                                              "unemployed", SINGLE);
   }
 
   /**
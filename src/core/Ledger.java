@@ -116,6 +116,9 @@ public class Ledger
 
     addTransaction(t);
 
+    if (debitAmount < 0)
+      account.depositFell();
+
     //if(type.polarity() < 0)
     //   turnover += amount;
   }
@@ -229,6 +232,9 @@ public class Ledger
     account.deposit += creditAmount;
 
     addTransaction(t);
+
+    if (creditAmount < 0)
+      account.depositFell();
     
     if(type.polarity() > 0)
       turnover += amount;
@@ -34,11 +34,13 @@ public class Market extends Company
   @Expose public int minSpread = 1;             // Mininum spread
   @Expose public int maxSpread = 5;             // Maximum spread
   @Expose public boolean payDividend = false;   // pay dividend
+  @Expose public boolean callAuction = false;   // Clear purchases once/step
   
   public boolean useLoan = false;       // t/f purchase requires a loan.
 
   
   public    Inventory inventory;        // Items Market owns
+  public    int       productId = ProductRegistry.NONE; // Registry id for product
   protected long      bidPrice;         // Price at which market will buy at
   protected long      sellPrice;        // Price at which market will sell at
   protected long      spread;           // Spread to maintain between Bid/Ask
@@ -54,6 +56,14 @@ public class Market extends Company
   private int totalPurchaseValue = 0;
   private int totalQuantitySold  = 0;
 
+  // Call auction - orders submitted by buyers during the step, cleared
+  // together by clearAuction(). Submission is synchronized so that buyers
+  // may submit from multiple threads; clearing order doesn't depend on
+  // submission order.
+
+  private final ArrayList<AuctionOrder> orders   = new ArrayList<>();
+  private Inventory                     delivery = null;
+
   // Statistics
 
   public int s_soldLastRound = 0;
@@ -92,10 +102,28 @@ public class Market extends Company
 
   public Market(String name, String product, Govt govt, Bank bank,
                 long initialDeposit)
+  {
+    this(name, product, govt, bank, initialDeposit, null);
+  }
+
+  /**
+   * Constructor for a market belonging to a region.
+   *
+   * @param name           Unique and identifying name for market
+   * @param product        Unique identifier for market's product
+   * @param initialDeposit Initial bank deposit
+   * @param govt           Government market belongs to
+   * @param bank           Bank used by market.
+   * @param region         Region market belongs to (or null)
+   */
+
+  public Market(String name, String product, Govt govt, Bank bank,
+                long initialDeposit, Region region)
   {
     super(name, initialDeposit, govt, bank);
     System.out.println(name + " " + getAccount());
     this.product = product.trim();
+    setRegion(region);
 
     // Use setProduct since this also initialises the statistic counters.
 
@@ -141,12 +169,14 @@ public class Market extends Company
   {
     if (inventory.product == null)
     {
-      inventory.product = this.product;
+      inventory.setProduct(this.product);
+      productId = inventory.productId;
 
-      s_inventory = Statistic.getStatistic(getProduct(), "inventory", SINGLE);
+      s_inventory = Statistic.getStatistic(getStatisticName(), "inventory", SINGLE)
+                             .addConsumer(Statistic.Consumer.MODEL);
 
-      s_sellprice = Statistic.getStatistic(getProduct() + ":ask-price", "prices", SINGLE);
-      s_bidprice =  Statistic.getStatistic(getProduct() + ":bid-price", "prices", SINGLE);
+      s_sellprice = Statistic.getStatistic(getStatisticName() + ":ask-price", "prices", SINGLE);
+      s_bidprice =  Statistic.getStatistic(getStatisticName() + ":bid-price", "prices", SINGLE);
 
     }
     else
@@ -155,6 +185,20 @@ public class Market extends Company
 	spread = minSpread;
   }
 
+  /**
+   * Return the base name for this market's statistics. Regional markets
+   * are prefixed by their region so that each shard has its own series.
+   *
+   * @return product, or region:product
+   */
+  protected String getStatisticName()
+  {
+    if (regionName.equals(""))
+      return product;
+    else
+      return regionName + ":" + product;
+  }
+
   /**
    * Change ttl to new value. This also impacts items in existing
    * inventory. (If their ttl was left unchanged, there would be 
@@ -194,6 +238,21 @@ public class Market extends Company
     return inventory.product;
   }
 
+  /**
+   * Return registry id of the product managed by this market. Markets
+   * loaded from gson won't have their product set until they are validated,
+   * so the id is registered here if necessary.
+   *
+   * @return product id
+   */
+  public int getProductId()
+  {
+    if (productId == ProductRegistry.NONE)
+      productId = ProductRegistry.register(product);
+
+    return productId;
+  }
+
   /**
    * Return current bid price for market
    *
@@ -454,6 +513,160 @@ public class Market extends Company
     return null;
   }
 
+  /**
+   * Submit an order to buy from the market when it is operating as a call
+   * auction. Orders are held until the market is cleared at the end of the
+   * step, when items are delivered directly to the need's store.
+   *
+   * @param buyer    Agent placing order
+   * @param need     Need the items are for
+   * @param quantity Quantity to buy
+   * @param maxPrice Maximum price (incl. sales tax) to pay, -1 market price
+   */
+  public void submitOrder(Agent buyer, Need need, long quantity, long maxPrice)
+  {
+    if (quantity <= 0)
+      return;
+
+    synchronized (orders)
+    {
+      orders.add(new AuctionOrder(buyer, need, quantity, maxPrice));
+    }
+  }
+
+  /**
+   * Clear all orders submitted this step against current inventory at a
+   * single clearing price - the market's ask price plus sales tax. Orders
+   * whose maximum price is below the clearing price, or whose buyer can't
+   * fund the whole order, are dropped. If demand exceeds supply, items are
+   * rationed pro-rata to order size, with remaining items allocated one at
+   * a time in agent id order, so the outcome is independent of the order
+   * in which buyers were evaluated.
+   *
+   * @param step Step number being executed
+   */
+  public void clearAuction(int step)
+  {
+    if (orders.isEmpty())
+      return;
+
+    long salesTaxLevied = (sellPrice * salesTax) / 100;
+    long price          = sellPrice + salesTaxLevied;
+    long supply         = inventory.getTotalItems();
+    long demand         = 0;
+
+    orders.sort(Comparator.comparingInt(o -> o.buyer.Id));
+
+    Iterator<AuctionOrder> itr = orders.iterator();
+
+    while (itr.hasNext())
+    {
+      AuctionOrder o = itr.next();
+
+      if (((o.maxPrice != -1) && (o.maxPrice < price))
+          || (o.buyer.getDeposit() <= price * o.quantity))
+        itr.remove();
+      else
+        demand += o.quantity;
+    }
+
+    if (demand > supply)
+    {
+      long allocated = 0;
+
+      for (AuctionOrder o : orders)
+      {
+        o.filled   = (o.quantity * supply) / demand;
+        allocated += o.filled;
+      }
+
+      for (int i = 0; allocated < supply; i = (i + 1) % orders.size())
+      {
+        AuctionOrder o = orders.get(i);
+
+        if (o.filled < o.quantity)
+        {
+          o.filled++;
+          allocated++;
+        }
+      }
+    }
+    else
+    {
+      for (AuctionOrder o : orders)
+        o.filled = o.quantity;
+    }
+
+    long totalFilled = 0;
+
+    if (delivery == null)
+      delivery = new Inventory(getProduct(), inventory.lifetime,
+                               inventory.unique);
+
+    for (AuctionOrder o : orders)
+    {
+      if (o.filled == 0)
+        continue;
+
+      if (!o.buyer.getAccount().transfer(getAccount(), price * o.filled,
+                                         "purchase from market: " + product))
+        continue;
+
+      inventory.remove(o.filled, delivery);
+
+      for (Widget w : delivery.inventory)
+        w.lastSoldPrice = price;
+
+      o.need.store.merge(delivery);
+      o.need.lastPricePaid = price;
+      delivery.inventory.clear();
+
+      totalFilled += o.filled;
+    }
+
+    orders.clear();
+
+    if (totalFilled == 0)
+      return;
+
+    totalSaleValue    += price * totalFilled;
+    totalQuantitySold += totalFilled;
+    s_soldThisRound   += totalFilled;
+
+    s_income.add(price * totalFilled);
+
+    if (salesTax > 0)
+    {
+      transfer(salesTax * totalFilled, govt, "Sales tax: "
+               + salesTax + " on " + totalFilled + " " + getProduct());
+    }
+
+    DEBUG("Market:" + inventory.product + " cleared #" + totalFilled
+          + " @ $" + price + " [" + getAccount().getDeposit() + "]");
+
+    sold = true;
+  }
+
+  /**
+   * Order held by the market while operating as a call auction.
+   */
+  static class AuctionOrder
+  {
+    final Agent buyer;
+    final Need  need;
+    final long  quantity;
+    final long  maxPrice;
+    long        filled;
+
+    AuctionOrder(Agent buyer, Need need, long quantity, long maxPrice)
+    {
+      this.buyer    = buyer;
+      this.need     = need;
+      this.quantity = quantity;
+      this.maxPrice = maxPrice;
+    }
+  }
+
   /**
    * Adjust prices based on inventory behaviour. Ceiling on purchase price is
    * the amount of money that the market has.
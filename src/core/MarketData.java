@@ -0,0 +1,295 @@
+package core;
+
+import java.io.*;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Program : Threadneedle
+ * Date    : October 2026
+ *
+ * Market data feed for a StockMarket. Every trade is published as it
+ * happens, and at the end of each step an OHLCV bar is published with a
+ * snapshot of the top levels of the order book. Recent trades and bars
+ * are kept in fixed size ring buffers, and can optionally be written to
+ * a binary file.
+ *
+ * File format (big endian, as written by DataOutputStream):
+ *
+ *   Trade : 'T' step(int) price(long) volume(long) buyer(int) seller(int)
+ *   Bar   : 'B' step(int) open high low close volume (long)
+ *               levels(int), then for each level:
+ *               bid price, bid volume, ask price, ask volume (long)
+ *
+ * Empty depth levels have price and volume 0.
+ */
+public class MarketData {
+
+  public static final int TRADES = 1024;   // Default trade buffer size
+  public static final int BARS   = 256;    // Default bar buffer size
+  public static final int DEPTH  = 5;      // Default depth levels
+
+  public static class Trade {
+    public final int  step;
+    public final long price;
+    public final long volume;
+    public final int  buyer;               // Agent ids
+    public final int  seller;
+
+    Trade(int step, long price, long volume, int buyer, int seller) {
+      this.step = step;
+      this.price = price;
+      this.volume = volume;
+      this.buyer = buyer;
+      this.seller = seller;
+    }
+
+    @Override
+    public String toString() {
+      return step + ": " + volume + "@" + price + " [" + seller + " -> " + buyer + "]";
+    }
+  }
+
+  public static class Bar {
+    public final int  step;
+    public final long open, high, low, close, volume;
+
+    // Depth snapshot, best price first
+    public final long[] bidPrice, bidVolume, askPrice, askVolume;
+
+    Bar(int step, long open, long high, long low, long close, long volume, int levels) {
+      this.step = step;
+      this.open = open;
+      this.high = high;
+      this.low = low;
+      this.close = close;
+      this.volume = volume;
+      this.bidPrice = new long[levels];
+      this.bidVolume = new long[levels];
+      this.askPrice = new long[levels];
+      this.askVolume = new long[levels];
+    }
+
+    @Override
+    public String toString() {
+      return step + ": O " + open + " H " + high + " L " + low + " C " + close + " V " + volume
+             + " bid " + bidVolume[0] + "@" + bidPrice[0]
+             + " ask " + askVolume[0] + "@" + askPrice[0];
+    }
+  }
+
+  /**
+   * Interface for subscribers to the feed. Subscribers are called on the
+   * simulation thread, and should return quickly.
+   */
+  public interface Listener {
+    default void onTrade(StockMarket market, Trade trade) {}
+    default void onBar(StockMarket market, Bar bar) {}
+  }
+
+  private final StockMarket market;
+  private final int levels;
+
+  private final Trade[] trades;
+  private final Bar[] bars;
+  private long nTrades = 0;                // Total published
+  private long nBars = 0;
+
+  private final ArrayList<Listener> listeners = new ArrayList<>();
+  private DataOutputStream out = null;
+
+  // Bar being built for the current step
+  private long open, high, low, close, volume;
+  private boolean traded = false;
+
+  public MarketData(StockMarket market) {
+    this(market, TRADES, BARS, DEPTH);
+  }
+
+  public MarketData(StockMarket market, int trades, int bars, int levels) {
+    this.market = market;
+    this.levels = levels;
+    this.trades = new Trade[trades];
+    this.bars = new Bar[bars];
+  }
+
+  public void subscribe(Listener l) {
+    if (!listeners.contains(l)) {
+      listeners.add(l);
+    }
+  }
+
+  public void unsubscribe(Listener l) {
+    listeners.remove(l);
+  }
+
+  /**
+   * Write the feed to a binary file, replacing any existing file.
+   *
+   * @param file file to write to
+   * @throws IOException if the file can't be opened
+   */
+  public void open(File file) throws IOException {
+    close();
+    out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)));
+  }
+
+  /**
+   * Stop writing the feed to file.
+   */
+  public void close() {
+    if (out != null) {
+      try {
+        out.close();
+      } catch (IOException e) {
+        System.err.println("Failed to close market data for " + market.name + ": " + e);
+      }
+      out = null;
+    }
+  }
+
+  /**
+   * Publish a trade.
+   *
+   * @param step   simulation step
+   * @param price  trade price
+   * @param volume no. of shares traded
+   * @param buyer  buyer
+   * @param seller seller
+   */
+  void trade(int step, long price, long volume, Agent buyer, Agent seller) {
+    Trade t = new Trade(step, price, volume, id(buyer), id(seller));
+
+    trades[(int) (nTrades++ % trades.length)] = t;
+
+    if (!traded) {
+      open = high = low = price;
+      traded = true;
+    }
+    high = Math.max(high, price);
+    low = Math.min(low, price);
+    close = price;
+    this.volume += volume;
+
+    if (out != null) {
+      try {
+        out.writeByte('T');
+        out.writeInt(t.step);
+        out.writeLong(t.price);
+        out.writeLong(t.volume);
+        out.writeInt(t.buyer);
+        out.writeInt(t.seller);
+      } catch (IOException e) {
+        failed(e);
+      }
+    }
+
+    for (Listener l : listeners) {
+      l.onTrade(market, t);
+    }
+  }
+
+  /**
+   * Publish the bar for the step that has just been evaluated.
+   *
+   * @param step      simulation step
+   * @param lastPrice last traded price, used if there were no trades
+   * @param book      order book to take depth snapshot from
+   */
+  void bar(int step, long lastPrice, OrderBook book) {
+    if (!traded) {
+      open = high = low = close = lastPrice;
+    }
+
+    Bar b = new Bar(step, open, high, low, close, volume, levels);
+    book.depth(StockMarket.OrderType.BID, b.bidPrice, b.bidVolume);
+    book.depth(StockMarket.OrderType.ASK, b.askPrice, b.askVolume);
+
+    bars[(int) (nBars++ % bars.length)] = b;
+
+    traded = false;
+    volume = 0;
+
+    if (out != null) {
+      try {
+        out.writeByte('B');
+        out.writeInt(b.step);
+        out.writeLong(b.open);
+        out.writeLong(b.high);
+        out.writeLong(b.low);
+        out.writeLong(b.close);
+        out.writeLong(b.volume);
+        out.writeInt(levels);
+        for (int i = 0; i < levels; i++) {
+          out.writeLong(b.bidPrice[i]);
+          out.writeLong(b.bidVolume[i]);
+          out.writeLong(b.askPrice[i]);
+          out.writeLong(b.askVolume[i]);
+        }
+        out.flush();
+      } catch (IOException e) {
+        failed(e);
+      }
+    }
+
+    for (Listener l : listeners) {
+      l.onBar(market, b);
+    }
+  }
+
+  /**
+   * Return the most recent trades, oldest first.
+   *
+   * @param n max no. of trades
+   * @return list of trades
+   */
+  public List<Trade> recentTrades(int n) {
+    return recent(trades, nTrades, n);
+  }
+
+  /**
+   * Return the most recent bars, oldest first.
+   *
+   * @param n max no. of bars
+   * @return list of bars
+   */
+  public List<Bar> recentBars(int n) {
+    return recent(bars, nBars, n);
+  }
+
+  /**
+   * Return the bar for the last step evaluated.
+   *
+   * @return bar, or null if none published yet
+   */
+  public Bar lastBar() {
+    return nBars == 0 ? null : bars[(int) ((nBars - 1) % bars.length)];
+  }
+
+  public long totalTrades() {
+    return nTrades;
+  }
+
+  public int getLevels() {
+    return levels;
+  }
+
+  private static <T> List<T> recent(T[] buffer, long total, int n) {
+    int size = (int) Math.min(Math.min(total, buffer.length), n);
+    ArrayList<T> list = new ArrayList<>(size);
+
+    for (long i = total - size; i < total; i++) {
+      list.add(buffer[(int) (i % buffer.length)]);
+    }
+    return list;
+  }
+
+  private static int id(Agent a) {
+    return (a == null || a.Id == null) ? -1 : a.Id;
+  }
+
+  private void failed(IOException e) {
+    System.err.println("Failed to write market data for " + market.name + ": " + e);
+    close();
+  }
+}
@@ -7,13 +7,19 @@
 // Author  : Jacky Mallett
 // Date    : April  2012
 //
-// Comments:
+// Comments: Markets may be sharded by Region. The country's container
+//           holds every market in its list, and a shard for each region
+//           indexes the markets belonging to that region. Agents in a
+//           region use their region's shard, which falls back to the
+//           country's markets for products without a regional market.
 package core;
 
 import javafx.collections.*;
 
 import java.util.*;
 
+import static base.Base.DEBUG;
+
 public class Markets
 {
   private Govt govt;
@@ -24,6 +30,15 @@ public class Markets
   public LinkedList<Market>     markets    = new LinkedList<>();
   public ObservableList<Market> obsMarkets = FXCollections.observableList(markets);
 
+  // Markets indexed by product id (see ProductRegistry)
+  private Market[]     byProduct = new Market[8];
+  private LabourMarket labour    = null;
+
+  // Regional shards (country container only), and shard's country container
+  private HashMap<String, Markets> shards = new HashMap<>();
+  private Markets parent = null;
+  private Region  region = null;
+
   public Markets(Bank bank, Govt g, long defaultdeposit)
   {
     govt = g;
@@ -31,6 +46,51 @@ public class Markets
     this.defaultdeposit = defaultdeposit;
   }
 
+  /**
+   * Return the shard of this container for the specified region, creating
+   * it if necessary. Shards are only held by the country's container, so
+   * a shard, or a null region, returns this container.
+   *
+   * @param region Region for shard
+   * @return Markets for region
+   */
+  public Markets getShard(Region region)
+  {
+    if (region == null || parent != null)
+      return this;
+
+    Markets shard = shards.get(region.name);
+
+    if (shard == null)
+    {
+      shard = new Markets(defaultbank, govt, defaultdeposit);
+      shard.parent = this;
+      shard.region = region;
+      shards.put(region.name, shard);
+    }
+    return shard;
+  }
+
+  /**
+   * Return the region shards held by this container.
+   *
+   * @return shards
+   */
+  public Collection<Markets> getShards()
+  {
+    return shards.values();
+  }
+
+  /**
+   * Return region this shard belongs to.
+   *
+   * @return Region or null for the country's container
+   */
+  public Region getRegion()
+  {
+    return region;
+  }
+
   /**
    * Create a market and add it to the list of markets managed by this
    * container.
@@ -48,18 +108,16 @@ public class Markets
   {
     // Check that no market already exists for this product
 
-    if (getMarket(product) != null)
+    if (getShard(region).getLocalMarket(ProductRegistry.getId(product)) != null)
       return "A market for " + product + " already exists";
 
     if(bank == null)
        bank = defaultbank;
 
-    Market market = new Market(name, product, govt, bank, deposit);
+    Market market = new Market(name, product, govt, bank, deposit, region);
 
     addMarket(market);
 
-    if(region != null)
-       market.setRegion(region);
     return null;
   }
 
@@ -78,7 +136,7 @@ public class Markets
     if (getMarket(product) == null)
     {
       Market m = new Market("M-" + product, product, govt, defaultbank,
-                            defaultdeposit);
+                            defaultdeposit, region);
       addMarket(m);
     }
     return getMarket(product);
@@ -92,77 +150,223 @@ public class Markets
   {
     obsMarkets.removeAll();
     markets.clear();
+    Arrays.fill(byProduct, null);
+    labour = null;
+    shards.clear();
     this.govt = null;
     this.defaultbank = null;
   }
 
   /**
-   * Add market to this container.
+   * Add market to this container. Markets with a region are indexed by
+   * the region's shard, and only one market for each product is allowed
+   * in each shard.
    *
    * @param newMarket Maket to add.
    */
 
   public void addMarket(Market newMarket)
   {
-    for (Market m : markets)
+    if (parent != null)
     {
-      if (m.getProduct().equals(newMarket.getProduct()))
-      {
-        System.out.println("Error: Market < " + newMarket.getProduct()
-                           + " > already in list");
-        //throw new RuntimeException();
-        return;
-      }
+      parent.addMarket(newMarket);
+      return;
     }
+
+    Markets shard = getShard(regionOf(newMarket));
+
+    if (shard.getLocalMarket(newMarket.getProductId()) != null)
+    {
+      System.out.println("Error: Market < " + newMarket.product
+                         + " > already in list");
+      //throw new RuntimeException();
+      return;
+    }
+
+    shard.index(newMarket);
+
+    if (shard != this)
+      shard.markets.add(newMarket);
+
     obsMarkets.add(newMarket);
   }
 
+  /**
+   * Index market by its product id.
+   *
+   * @param market Market to index
+   */
+  private void index(Market market)
+  {
+    int id = market.getProductId();
+
+    if (id >= byProduct.length)
+      byProduct = Arrays.copyOf(byProduct,
+                                Math.max(id + 1, byProduct.length * 2));
+    byProduct[id] = market;
+
+    if (market instanceof LabourMarket)
+      labour = (LabourMarket) market;
+  }
+
+  /**
+   * Return the region a market belongs to. Markets loaded from file will
+   * only have their region name set until they are initialised.
+   *
+   * @param market Market
+   * @return Region or null
+   */
+  private Region regionOf(Market market)
+  {
+    if (market.region != null)
+      return market.region;
+    else if (!market.regionName.equals(""))
+      return govt.regions.get(market.regionName);
+    else
+      return null;
+  }
+
   public void removeMarket(Market market)
   {
     markets.remove(market);
-  }
 
-  // TODO: replace with hash map
+    Markets shard = getShard(regionOf(market));
+    int     id    = market.getProductId();
+
+    shard.markets.remove(market);
+
+    if (id < shard.byProduct.length && shard.byProduct[id] == market)
+      shard.byProduct[id] = null;
+
+    if (shard.labour == market)
+      shard.labour = null;
+  }
 
   /**
-   * Return market for specified product. If more than one market for the same
-   * product exists, the first in the list is returned. Names are case 
-   * insensitive but a warning message will be printed if no match occurs, but
-   * a case insensitive match would have succeeded.
+   * Return market for specified product. Product names are case sensitive,
+   * case mismatches are reported by the ProductRegistry when the product
+   * is first registered during configuration load.
    *
    * @param name Name of product
    * @return Market, or null
    */
   public Market getMarket(String name)
   {
-    String caseMatch = null;
+    return getMarket(ProductRegistry.getId(name));
+  }
 
-    for (Market m : markets)
-    {
-      if (m.getProduct().equals(name))
-        return m;
-      else if(m.getProduct().equalsIgnoreCase(name))
-      {
-         caseMatch = m.getProduct();
-      }
-    }
+  /**
+   * Return market for specified product id. A shard without a market for
+   * the product returns the country's market.
+   *
+   * @param id Product id from ProductRegistry
+   * @return Market, or null
+   */
+  public Market getMarket(int id)
+  {
+    Market market = getLocalMarket(id);
 
-    if(caseMatch != null)
-    {
-      System.out.println("***Market search is case sensitive and failed to find :" + name + "***\nDid find caseInsensitive match " + caseMatch);
-    }
-    // System.out.println("Failed to find market in Markets: " + name);
-    return null;
+    if (market == null && parent != null)
+      return parent.getMarket(id);
+
+    return market;
   }
 
   /**
-   * Return the labour market in this collection.
+   * Return market for specified product id held by this container/shard
+   * only.
+   *
+   * @param id Product id from ProductRegistry
+   * @return Market, or null
+   */
+  public Market getLocalMarket(int id)
+  {
+    if (id < 0 || id >= byProduct.length)
+      return null;
+
+    return byProduct[id];
+  }
+
+  /**
+   * Return the labour market in this collection, or the country's labour
+   * market if this is a shard without one.
    *
    * @return labour market
    */
   public LabourMarket getLabourMarket()
   {
-    return ((LabourMarket) getMarket("Labour"));
+    if (labour == null && parent != null)
+      return parent.getLabourMarket();
+
+    return labour;
+  }
+
+  /**
+   * Cross-region arbitrage. For each product traded in more than one
+   * shard, the market with the highest bid buys from the market with the
+   * lowest ask, for as long as the ask is below the bid, limited by the
+   * buying market's inventory space and funds. Labour and house markets
+   * are excluded, as are markets with no positive ask price to buy from.
+   */
+  public void arbitrage()
+  {
+    if (shards.isEmpty())
+      return;
+
+    for (int id = 0; id < ProductRegistry.size(); id++)
+    {
+      Market cheapest = null;
+      Market dearest  = null;
+
+      for (Markets shard : shards.values())
+      {
+        Market m = shard.getLocalMarket(id);
+
+        if ((m == null) || (m instanceof LabourMarket) || m.useLoan)
+          continue;
+
+        // Markets without a positive ask have nothing to sell at a price
+        if ((m.getAskPrice() > 0)
+            && ((cheapest == null) || (m.getAskPrice() < cheapest.getAskPrice())))
+          cheapest = m;
+        if ((dearest == null) || (m.getBidPrice() > dearest.getBidPrice()))
+          dearest = m;
+      }
+
+      Market national = getLocalMarket(id);
+
+      if ((national != null) && !(national instanceof LabourMarket)
+          && !national.useLoan && (cheapest != null))
+      {
+        if ((national.getAskPrice() > 0)
+            && (national.getAskPrice() < cheapest.getAskPrice()))
+          cheapest = national;
+        if (national.getBidPrice() > dearest.getBidPrice())
+          dearest = national;
+      }
+
+      if ((cheapest == null) || (cheapest == dearest)
+          || (cheapest.getAskPrice() >= dearest.getBidPrice()))
+        continue;
+
+      long quantity = Math.min(cheapest.getTotalItems(),
+                               dearest.maxInventory - dearest.getTotalItems());
+
+      quantity = Math.min(quantity,
+                          (dearest.getDeposit() - 1) / cheapest.getAskPrice());
+
+      if (quantity <= 0)
+        continue;
+
+      Inventory items = cheapest.buy(quantity, dearest.getAccount());
+
+      if (items != null)
+      {
+        dearest.inventory.merge(items);
+        DEBUG("Arbitrage: " + dearest.name + " bought #" + quantity
+              + " " + dearest.getProduct() + " from " + cheapest.name);
+      }
+    }
   }
 
   /**
@@ -195,6 +399,22 @@ public class Markets
     }
   }
 
+  /**
+   * Clear the orders placed with markets operating as call auctions. Called
+   * once buyers have been evaluated for the step.
+   *
+   * @param step Step number being executed
+   */
+
+  public void clearAuctions(int step)
+  {
+    for (Market market : markets)
+    {
+      if (market.callAuction)
+        market.clearAuction(step);
+    }
+  }
+
   /**
    * Print out list of markets in container.
    */
@@ -0,0 +1,286 @@
+/* Program  : Threadneedle
+ *
+ * MetricsServer : Embedded http endpoint serving the state of a running
+ *                 simulation in Prometheus text exposition format.
+ *
+ * Date     : October 2026
+ *
+ * Comments : GET /metrics returns:
+ *
+ *              threadneedle_statistic{name,group}   last value of each
+ *                                                   live statistic
+ *              threadneedle_step                    current step
+ *              threadneedle_steps_per_second        over the last interval
+ *              threadneedle_phase_seconds_total{phase}  time spent in each
+ *                                                   phase of evaluate()
+ *              threadneedle_statistics{state}       live/dormant counts
+ *              threadneedle_run_info{config,description,seed}
+ *              threadneedle_start_time_seconds
+ *              threadneedle_heap_bytes{area}        used/committed/max
+ *
+ *            The simulation thread publishes an immutable snapshot of its
+ *            values at the end of a step, at most once every interval
+ *            milliseconds. Requests are served on the server's own thread
+ *            from the latest snapshot, so a scrape never waits for, or
+ *            holds up, the simulation. Only the loopback address is
+ *            bound.
+ */
+package core;
+
+import base.Base;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import statistics.Statistic;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryUsage;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+public class MetricsServer
+{
+  public static final int  DEFAULT_PORT     = 9464;
+  public static final long DEFAULT_INTERVAL = 1000;    // ms between snapshots
+
+  private static final String CONTENT_TYPE = "text/plain; version=0.0.4; charset=utf-8";
+
+  private final HttpServer      server;
+  private final ExecutorService executor;
+  private final long            interval;
+  private final long       started = System.currentTimeMillis();
+
+  private volatile Snapshot snapshot = new Snapshot();
+
+  private long lastPublished = 0;                      // nanoTime
+  private int  lastStep      = 0;
+
+  /*
+   * Values copied from the simulation at the end of a step.
+   */
+  private static class Snapshot
+  {
+    int      step          = 0;
+    double   stepsPerSecond = 0;
+    String[] names         = new String[0];
+    String[] groups        = new String[0];
+    long[]   values        = new long[0];
+    long[]   phaseNanos    = new long[0];
+    int      live          = 0;
+    int      dormant       = 0;
+    String   config        = "";
+    String   description   = "";
+    int      seed          = 0;
+  }
+
+  /**
+   * Constructor: start serving metrics.
+   *
+   * @param port     Port on the loopback address (0 for any free port)
+   * @param interval Minimum time between snapshots, ms
+   * @throws IOException if the port can't be bound
+   */
+  public MetricsServer(int port, long interval) throws IOException
+  {
+    this.interval = interval;
+
+    server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(),
+                                                     port), 0);
+    server.createContext("/metrics", this::handle);
+    executor = Executors.newSingleThreadExecutor(r ->
+    {
+      Thread t = new Thread(r, "metrics");
+      t.setDaemon(true);
+      return t;
+    });
+    server.setExecutor(executor);
+    server.start();
+  }
+
+  public MetricsServer(int port) throws IOException
+  {
+    this(port, DEFAULT_INTERVAL);
+  }
+
+  /**
+   * Return port being served.
+   *
+   * @return port
+   */
+  public int getPort()
+  {
+    return server.getAddress().getPort();
+  }
+
+  public void stop()
+  {
+    server.stop(0);
+    executor.shutdown();                     // Not shut down by the server
+  }
+
+  /**
+   * Take a snapshot of the simulation if interval has passed since the
+   * last one. Called by the simulation thread at the end of each step.
+   *
+   * @param simeng Simulation
+   */
+  public void publish(SimulationEngine simeng)
+  {
+    long now = System.nanoTime();
+
+    if (lastPublished != 0 && now - lastPublished < interval * 1000000L)
+      return;
+
+    Snapshot s = new Snapshot();
+
+    ArrayList<Statistic> stats = new ArrayList<>();
+    for (Statistic st : Statistic.names.values())
+      if (st.isLive() && st.name != null)
+        stats.add(st);
+
+    s.names = new String[stats.size()];
+    s.groups = new String[stats.size()];
+    s.values = new long[stats.size()];
+    for (int i = 0; i < stats.size(); i++)
+    {
+      Statistic st = stats.get(i);
+
+      s.names[i] = st.name;
+      s.groups[i] = st.group;
+      s.values[i] = st.peek();
+    }
+
+    s.step = Base.step;
+    s.stepsPerSecond = lastPublished == 0 || Base.step < lastStep ? 0
+                       : (Base.step - lastStep) * 1e9 / (now - lastPublished);
+    s.phaseNanos = simeng.getPhaseNanos();
+    s.live = Statistic.liveCount();
+    s.dormant = Statistic.dormantCount();
+    s.config = simeng.configFile;
+    s.description = simeng.description;
+    s.seed = Base.seed;
+
+    lastPublished = now;
+    lastStep = Base.step;
+    snapshot = s;
+  }
+
+  private void handle(HttpExchange exchange) throws IOException
+  {
+    try
+    {
+      if (!exchange.getRequestMethod().equals("GET"))
+      {
+        exchange.sendResponseHeaders(405, -1);
+        return;
+      }
+
+      byte[] body;
+      int    status = 200;
+
+      try
+      {
+        body = format(snapshot).getBytes(StandardCharsets.UTF_8);
+      }
+      catch (RuntimeException e)
+      {
+        body = ("Failed to format metrics: " + e + "\n").getBytes(StandardCharsets.UTF_8);
+        status = 500;
+      }
+
+      exchange.getResponseHeaders().set("Content-Type", CONTENT_TYPE);
+      exchange.sendResponseHeaders(status, body.length);
+      try (OutputStream out = exchange.getResponseBody())
+      {
+        out.write(body);
+      }
+    }
+    finally
+    {
+      exchange.close();
+    }
+  }
+
+  private String format(Snapshot s)
+  {
+    StringBuilder sb = new StringBuilder(4096 + 64 * s.names.length);
+
+    header(sb, "threadneedle_statistic", "gauge",
+           "Last value of simulation statistic");
+    for (int i = 0; i < s.names.length; i++)
+    {
+      sb.append("threadneedle_statistic{name=\"");
+      escape(sb, s.names[i]);
+      sb.append("\",group=\"");
+      escape(sb, s.groups[i] == null ? "" : s.groups[i]);
+      sb.append("\"} ").append(s.values[i]).append('\n');
+    }
+
+    header(sb, "threadneedle_step", "gauge", "Current simulation step");
+    sb.append("threadneedle_step ").append(s.step).append('\n');
+
+    header(sb, "threadneedle_steps_per_second", "gauge",
+           "Simulation steps per second");
+    sb.append("threadneedle_steps_per_second ").append(s.stepsPerSecond).append('\n');
+
+    header(sb, "threadneedle_phase_seconds_total", "counter",
+           "Time spent in each phase of a simulation step");
+    for (int i = 0; i < s.phaseNanos.length; i++)
+      sb.append("threadneedle_phase_seconds_total{phase=\"")
+        .append(SimulationEngine.PHASES[i]).append("\"} ")
+        .append(s.phaseNanos[i] / 1e9).append('\n');
+
+    header(sb, "threadneedle_statistics", "gauge",
+           "Statistics rolled over each step (live) or not (dormant)");
+    sb.append("threadneedle_statistics{state=\"live\"} ").append(s.live).append('\n');
+    sb.append("threadneedle_statistics{state=\"dormant\"} ").append(s.dormant).append('\n');
+
+    header(sb, "threadneedle_run_info", "gauge", "Simulation being run");
+    sb.append("threadneedle_run_info{config=\"");
+    escape(sb, s.config);
+    sb.append("\",description=\"");
+    escape(sb, s.description);
+    sb.append("\",seed=\"").append(s.seed).append("\"} 1\n");
+
+    header(sb, "threadneedle_start_time_seconds", "gauge",
+           "Time metrics server was started, seconds since the epoch");
+    sb.append("threadneedle_start_time_seconds ").append(started / 1000).append('\n');
+
+    MemoryUsage heap = ManagementFactory.getMemoryMXBean().getHeapMemoryUsage();
+
+    header(sb, "threadneedle_heap_bytes", "gauge", "JVM heap");
+    sb.append("threadneedle_heap_bytes{area=\"used\"} ").append(heap.getUsed()).append('\n');
+    sb.append("threadneedle_heap_bytes{area=\"committed\"} ").append(heap.getCommitted()).append('\n');
+    sb.append("threadneedle_heap_bytes{area=\"max\"} ").append(heap.getMax()).append('\n');
+
+    return sb.toString();
+  }
+
+  private static void header(StringBuilder sb, String name, String type,
+                             String help)
+  {
+    sb.append("# HELP ").append(name).append(' ').append(help).append('\n');
+    sb.append("# TYPE ").append(name).append(' ').append(type).append('\n');
+  }
+
+  // Escape label value
+  private static void escape(StringBuilder sb, String value)
+  {
+    for (int i = 0; i < value.length(); i++)
+    {
+      char c = value.charAt(i);
+
+      if (c == '\\' || c == '"')
+        sb.append('\\').append(c);
+      else if (c == '\n')
+        sb.append("\\n");
+      else
+        sb.append(c);
+    }
+  }
+}
@@ -28,6 +28,7 @@ public class Need
   @Expose public boolean useLoan;       // Purchase requires a loan
   @Expose public boolean consumable;    // Houses, etc. are nonConsumable.
 
+  public int  productId;                // Registry id for product
   public long lastPricePaid;            // Last price paid for item
   public Inventory store;               // Current holdings of item
 
@@ -43,6 +44,7 @@ public class Need
     this.useLoan     = useLoan;
 
     this.store = new Inventory(this.product, true, false);
+    this.productId = store.productId;
   }
 
   /**
@@ -52,6 +54,8 @@ public class Need
   {
     if (this.store == null)
       this.store = new Inventory(this.product, true, false);
+
+    this.productId = store.productId;
   }
 
   /**
@@ -98,6 +102,7 @@ public class Need
   {
     lastPricePaid = 0;
     this.store = new Inventory(this.product, true, false);
+    this.productId = store.productId;
   }
 
   /**
@@ -0,0 +1,265 @@
+/* Program  : Threadneedle
+ *
+ * ObservationBuilder : Observation vectors for learning agents, assembled
+ *                      from features cached per market, per bank and per
+ *                      step.
+ *
+ * Date     : October 2026
+ *
+ * Comments : Market features are updated once per step from the market's
+ *            data feed (see MarketData), when its bar is published:
+ *            best bid and ask, spread, close, returns over 1 and 5 steps,
+ *            mean and volatility of returns over the last RETURNS steps
+ *            (kept as running sums over a ring buffer), traded volume, and
+ *            the volume at each of the top depth levels.
+ *
+ *            Bank features (reserve and capital ratios, lending rate) and
+ *            economy wide features (base rate, unemployment) are computed
+ *            the first time they are needed in a step, and shared by all
+ *            agents observing them.
+ *
+ *            An observation is the agent's own position followed by these
+ *            features, see getFeatureNames(). Building one costs
+ *            O(features), regardless of the size of the order book or the
+ *            length of the return history.
+ */
+package core;
+
+import base.Base;
+import statistics.Statistic;
+
+import java.util.*;
+
+public class ObservationBuilder
+{
+  public static final int RETURNS = 20;              // Volatility window
+
+  private static final String[] AGENT  = {"deposit", "debt", "shareHolding", "isZombie"};
+  private static final String[] MARKET = {"bid", "ask", "spread", "close", "return1",
+                                          "return5", "meanReturn", "volatility", "volume"};
+  private static final String[] BANK   = {"reserveRatio", "capitalRatio", "lendingRate"};
+  private static final String[] ECONOMY = {"baseRate", "unemployed"};
+
+  private final int levels;                          // Depth levels observed
+  private final String[] names;
+
+  private final HashMap<StockMarket, MarketFeatures> markets = new HashMap<>();
+  private final HashMap<Bank, BankFeatures>          banks   = new HashMap<>();
+
+  private int    economyStep = -1;
+  private double baseRate;
+  private double unemployed;
+
+  /**
+   * Market features, updated from the market's feed at the end of each of
+   * its steps.
+   */
+  private class MarketFeatures implements MarketData.Listener
+  {
+    final double[] features = new double[MARKET.length + 2 * levels];
+
+    // Closing prices for the last RETURNS + 1 steps, and running sums of
+    // the returns between them
+    final double[] closes = new double[RETURNS + 1];
+    int            bars   = 0;
+    double         sum, sumsq;
+
+    @Override
+    public void onBar(StockMarket market, MarketData.Bar bar)
+    {
+      double close = bar.close;
+      double r1    = 0;
+
+      if (bars > 0)
+      {
+        double prev = closes[(bars - 1) % closes.length];
+
+        r1 = prev == 0 ? 0 : close / prev - 1;
+
+        // drop the return leaving the window
+        if (bars > RETURNS)
+        {
+          double r = ret(bars - RETURNS);
+
+          sum -= r;
+          sumsq -= r * r;
+        }
+        sum += r1;
+        sumsq += r1 * r1;
+      }
+      closes[bars % closes.length] = close;
+      bars++;
+
+      int    n    = Math.min(bars - 1, RETURNS);
+      double mean = n == 0 ? 0 : sum / n;
+      double var  = n == 0 ? 0 : Math.max(0, sumsq / n - mean * mean);
+      double p5   = bars > 5 ? closes[(bars - 6) % closes.length] : 0;
+
+      double bid = bar.bidPrice.length > 0 ? bar.bidPrice[0] : 0;
+      double ask = bar.askPrice.length > 0 ? bar.askPrice[0] : 0;
+
+      features[0] = bid;
+      features[1] = ask;
+      features[2] = bid > 0 && ask > 0 ? ask - bid : 0;
+      features[3] = close;
+      features[4] = r1;
+      features[5] = p5 == 0 ? 0 : close / p5 - 1;
+      features[6] = mean;
+      features[7] = Math.sqrt(var);
+      features[8] = bar.volume;
+
+      for (int i = 0; i < levels; i++)
+      {
+        features[MARKET.length + i] = i < bar.bidVolume.length ? bar.bidVolume[i] : 0;
+        features[MARKET.length + levels + i] = i < bar.askVolume.length ? bar.askVolume[i] : 0;
+      }
+    }
+
+    // Return between bar i-1 and bar i
+    private double ret(int i)
+    {
+      double prev = closes[(i - 1) % closes.length];
+
+      return prev == 0 ? 0 : closes[i % closes.length] / prev - 1;
+    }
+  }
+
+  private static class BankFeatures
+  {
+    final double[] features = new double[BANK.length];
+    int            step     = -1;
+  }
+
+  /**
+   * Constructor:
+   *
+   * @param levels No. of depth levels to observe
+   */
+  public ObservationBuilder(int levels)
+  {
+    this.levels = levels;
+
+    ArrayList<String> n = new ArrayList<>();
+
+    n.addAll(Arrays.asList(AGENT));
+    n.addAll(Arrays.asList(MARKET));
+    for (int i = 0; i < levels; i++)
+      n.add("bidVolume" + i);
+    for (int i = 0; i < levels; i++)
+      n.add("askVolume" + i);
+    n.addAll(Arrays.asList(BANK));
+    n.addAll(Arrays.asList(ECONOMY));
+
+    names = n.toArray(new String[0]);
+  }
+
+  public ObservationBuilder()
+  {
+    this(MarketData.DEPTH);
+  }
+
+  /**
+   * Return no. of values in an observation.
+   *
+   * @return size
+   */
+  public int size()
+  {
+    return names.length;
+  }
+
+  public String[] getFeatureNames()
+  {
+    return names.clone();
+  }
+
+  /**
+   * Write the observation for an agent trading in a market.
+   *
+   * @param agent  Agent
+   * @param market Market the agent trades in
+   * @param out    Array to write to
+   * @param offset Offset of first value in out
+   */
+  public void observe(Agent agent, StockMarket market, double[] out, int offset)
+  {
+    int i = offset;
+
+    out[i++] = agent.getDeposit();
+    out[i++] = agent.getDebt();
+    out[i++] = agent.getShareholding(market.name);
+    out[i++] = agent.getBank().zombie ? 1 : 0;
+
+    double[] m = market(market).features;
+    System.arraycopy(m, 0, out, i, m.length);
+    i += m.length;
+
+    double[] b = bank(agent.getBank());
+    System.arraycopy(b, 0, out, i, b.length);
+    i += b.length;
+
+    economy(agent.govt);
+    out[i++] = baseRate;
+    out[i]   = unemployed;
+  }
+
+  /**
+   * Forget cached features, and stop following market feeds - used for
+   * simulation reset.
+   */
+  public void reset()
+  {
+    for (Map.Entry<StockMarket, MarketFeatures> e : markets.entrySet())
+      e.getKey().feed.unsubscribe(e.getValue());
+
+    markets.clear();
+    banks.clear();
+    economyStep = -1;
+  }
+
+  private MarketFeatures market(StockMarket market)
+  {
+    MarketFeatures f = markets.get(market);
+
+    if (f == null)
+    {
+      f = new MarketFeatures();
+      markets.put(market, f);
+      market.feed.subscribe(f);
+
+      MarketData.Bar bar = market.feed.lastBar();
+      if (bar != null)
+        f.onBar(market, bar);
+    }
+    return f;
+  }
+
+  private double[] bank(Bank bank)
+  {
+    BankFeatures f = banks.computeIfAbsent(bank, b -> new BankFeatures());
+
+    if (f.step != Base.step)
+    {
+      long deposits = bank.gl.ledger("deposit").total();
+      long loans    = bank.getTotalLoans();
+
+      f.features[0] = deposits == 0 ? 0 : (double) bank.getCBReserves() / deposits;
+      f.features[1] = loans == 0 ? 0 : (double) bank.getTotalCapital() / loans;
+      f.features[2] = bank.requestInterestRate(0);
+      f.step = Base.step;
+    }
+    return f.features;
+  }
+
+  private void economy(Govt govt)
+  {
+    if (economyStep != Base.step)
+    {
+      Statistic s = Statistic.getStatistic("unemployed");
+
+      baseRate = govt.centralbank == null ? 0 : govt.centralbank.getBaseRate();
+      unemployed = s == null ? 0 : s.get();
+      economyStep = Base.step;
+    }
+  }
+}
@@ -0,0 +1,395 @@
+/**
+ * OrderBook   : Price-time priority limit order book for a StockMarket
+ *
+ * Date        : October 2026
+ *
+ * Comments    : Orders are held in price levels, each level keeping its
+ *               orders in arrival order as a linked list threaded through
+ *               the orders themselves, so that any order can be removed in
+ *               constant time once found. Orders are found by id through a
+ *               hash index. The best bid and ask levels are cached, so the
+ *               top of the book is available without a tree search.
+ *
+ *               Each agent's live orders are also indexed by side, so that
+ *               an agent's orders can be found and cancelled without
+ *               scanning the whole book. Orders with a time to live are
+ *               held in an OrderExpiry wheel.
+ */
+package core;
+
+import core.StockMarket.Order;
+import core.StockMarket.OrderType;
+
+import java.util.*;
+
+class OrderBook
+{
+  // Orders at a single price, oldest first
+  static class PriceLevel
+  {
+    final long price;
+    long  volume;                 // Total volume of orders at this price
+    int   size;                   // No. of orders at this price
+    Order head, tail;
+
+    PriceLevel(long price)
+    {
+      this.price = price;
+    }
+  }
+
+  // Bids are held highest price first, asks lowest price first.
+  private final TreeMap<Long, PriceLevel> bids = new TreeMap<>(Collections.reverseOrder());
+  private final TreeMap<Long, PriceLevel> asks = new TreeMap<>();
+
+  // Live orders owned by a single agent
+  static class AgentOrders
+  {
+    final LinkedHashSet<Order> bids = new LinkedHashSet<>();
+    final LinkedHashSet<Order> asks = new LinkedHashSet<>();
+
+    LinkedHashSet<Order> side(OrderType type)
+    {
+      return (type == OrderType.BID) ? bids : asks;
+    }
+
+    boolean isEmpty()
+    {
+      return bids.isEmpty() && asks.isEmpty();
+    }
+  }
+
+  private final HashMap<Long, Order> orders = new HashMap<>();
+  private final HashMap<Agent, AgentOrders> owners = new HashMap<>();
+  private final OrderExpiry expiry = new OrderExpiry();
+
+  private PriceLevel bestBid = null;
+  private PriceLevel bestAsk = null;
+
+  private long nextId = 1;
+
+  /**
+   * Return id for a new order. Ids increase with time, and so also provide
+   * time priority between orders at the same price.
+   *
+   * @return order id
+   */
+  long assignId()
+  {
+    return nextId++;
+  }
+
+  /**
+   * Add order to the back of the queue for its price.
+   *
+   * @param o Order to add
+   */
+  void add(Order o)
+  {
+    TreeMap<Long, PriceLevel> side = side(o.type);
+    PriceLevel level = side.get(o.price);
+
+    if (level == null)
+    {
+      level = new PriceLevel(o.price);
+      side.put(o.price, level);
+
+      if (o.type == OrderType.BID)
+      {
+        if (bestBid == null || o.price > bestBid.price)
+          bestBid = level;
+      }
+      else if (bestAsk == null || o.price < bestAsk.price)
+        bestAsk = level;
+    }
+
+    o.level = level;
+    o.prev  = level.tail;
+    o.next  = null;
+
+    if (level.tail == null)
+      level.head = o;
+    else
+      level.tail.next = o;
+
+    level.tail = o;
+    level.size++;
+    level.volume += o.volume;
+
+    orders.put(o.id, o);
+    owners.computeIfAbsent(o.agent, a -> new AgentOrders()).side(o.type).add(o);
+    expiry.add(o);
+  }
+
+  /**
+   * Remove order from the book.
+   *
+   * @param o Order to remove
+   * @return t/f order was in the book
+   */
+  boolean remove(Order o)
+  {
+    PriceLevel level = o.level;
+
+    if (level == null)
+      return false;
+
+    if (o.prev == null)
+      level.head = o.next;
+    else
+      o.prev.next = o.next;
+
+    if (o.next == null)
+      level.tail = o.prev;
+    else
+      o.next.prev = o.prev;
+
+    level.size--;
+    level.volume -= o.volume;
+
+    o.level = null;
+    o.prev  = o.next = null;
+
+    orders.remove(o.id);
+    expiry.remove(o);
+
+    AgentOrders owned = owners.get(o.agent);
+    if (owned != null)
+    {
+      owned.side(o.type).remove(o);
+      if (owned.isEmpty())
+        owners.remove(o.agent);
+    }
+
+    if (level.size == 0)
+    {
+      TreeMap<Long, PriceLevel> side = side(o.type);
+      side.remove(level.price);
+
+      if (level == bestBid)
+        bestBid = bids.isEmpty() ? null : bids.firstEntry().getValue();
+      else if (level == bestAsk)
+        bestAsk = asks.isEmpty() ? null : asks.firstEntry().getValue();
+    }
+    return true;
+  }
+
+  /**
+   * Fill part or all of an order. Filled orders are removed from the book.
+   *
+   * @param o      Order being filled
+   * @param volume Volume filled
+   */
+  void fill(Order o, long volume)
+  {
+    o.decreaseOrder(volume);
+
+    if (o.level != null)
+    {
+      o.level.volume -= volume;
+
+      if (o.volume == 0)
+        remove(o);
+    }
+  }
+
+  /**
+   * Remove the orders which expire at the specified step.
+   *
+   * @param step Step (market clock)
+   * @return orders removed
+   */
+  List<Order> expire(long step)
+  {
+    List<Order> expired = expiry.expire(step);
+
+    for (Order o : expired)
+      remove(o);
+
+    return expired;
+  }
+
+  /**
+   * Return order with specified id.
+   *
+   * @param id Order id
+   * @return Order or null if not in the book
+   */
+  Order get(long id)
+  {
+    return orders.get(id);
+  }
+
+  /**
+   * Return the live orders owned by an agent, in order of placement.
+   *
+   * @param agent Owner of orders
+   * @param type  side of book, or null for both sides
+   * @return list of orders
+   */
+  List<Order> ordersBy(Agent agent, OrderType type)
+  {
+    AgentOrders owned = owners.get(agent);
+
+    if (owned == null)
+      return Collections.emptyList();
+
+    ArrayList<Order> list = new ArrayList<>();
+
+    if (type == null || type == OrderType.ASK)
+      list.addAll(owned.asks);
+    if (type == null || type == OrderType.BID)
+      list.addAll(owned.bids);
+
+    return list;
+  }
+
+  /**
+   * Return no. of live orders owned by an agent.
+   *
+   * @param agent Owner of orders
+   * @param type  side of book, or null for both sides
+   * @return no. of orders
+   */
+  int count(Agent agent, OrderType type)
+  {
+    AgentOrders owned = owners.get(agent);
+
+    if (owned == null)
+      return 0;
+    else if (type == null)
+      return owned.bids.size() + owned.asks.size();
+    else
+      return owned.side(type).size();
+  }
+
+  /**
+   * Test if order is currently in the book.
+   *
+   * @param o Order
+   * @return t/f
+   */
+  boolean contains(Order o)
+  {
+    return o.level != null;
+  }
+
+  /**
+   * Return the order with priority on one side of the book.
+   *
+   * @param type side of book
+   * @return Order or null if side is empty
+   */
+  Order best(OrderType type)
+  {
+    PriceLevel level = (type == OrderType.BID) ? bestBid : bestAsk;
+
+    return level == null ? null : level.head;
+  }
+
+  /**
+   * Return the best price on one side of the book.
+   *
+   * @param type side of book
+   * @return price, or -1 if side is empty
+   */
+  long bestPrice(OrderType type)
+  {
+    PriceLevel level = (type == OrderType.BID) ? bestBid : bestAsk;
+
+    return level == null ? -1 : level.price;
+  }
+
+  /**
+   * Test whether an order would trade against the other side of the book.
+   *
+   * @param o Order
+   * @return t/f order crosses the spread
+   */
+  boolean crosses(Order o)
+  {
+    if (o.type == OrderType.BID)
+      return bestAsk != null && o.price >= bestAsk.price;
+    else
+      return bestBid != null && o.price <= bestBid.price;
+  }
+
+  boolean isEmpty(OrderType type)
+  {
+    return side(type).isEmpty();
+  }
+
+  /**
+   * Return no. of orders on one side of the book.
+   *
+   * @param type side of book
+   * @return no. of orders
+   */
+  long size(OrderType type)
+  {
+    long size = 0;
+
+    for (PriceLevel level : side(type).values())
+      size += level.size;
+
+    return size;
+  }
+
+  /**
+   * Return no. of orders in the book.
+   *
+   * @return no. of orders
+   */
+  int size()
+  {
+    return orders.size();
+  }
+
+  /**
+   * Fill arrays with the price and total volume of the top levels on one
+   * side of the book. Unused levels are set to 0.
+   *
+   * @param type    side of book
+   * @param prices  prices, best first
+   * @param volumes volume at each price
+   */
+  void depth(OrderType type, long[] prices, long[] volumes)
+  {
+    int i = 0;
+
+    for (PriceLevel level : side(type).values())
+    {
+      if (i == prices.length)
+        break;
+
+      prices[i]  = level.price;
+      volumes[i] = level.volume;
+      i++;
+    }
+    for (; i < prices.length; i++)
+      prices[i] = volumes[i] = 0;
+  }
+
+  /**
+   * Return the orders on one side of the book in priority order.
+   *
+   * @param type side of book
+   * @return list of orders
+   */
+  List<Order> list(OrderType type)
+  {
+    ArrayList<Order> list = new ArrayList<>();
+
+    for (PriceLevel level : side(type).values())
+    {
+      for (Order o = level.head; o != null; o = o.next)
+        list.add(o);
+    }
+    return list;
+  }
+
+  private TreeMap<Long, PriceLevel> side(OrderType type)
+  {
+    return (type == OrderType.BID) ? bids : asks;
+  }
+}
@@ -0,0 +1,90 @@
+/**
+ * OrderBookBench : Timing harness for OrderBook
+ *
+ * Date           : October 2026
+ *
+ * Comments       : Times matching and cancelling against books of
+ *                  increasing depth. Run as
+ *
+ *                    java core.OrderBookBench [ops]
+ */
+package core;
+
+import core.StockMarket.Order;
+import core.StockMarket.OrderType;
+
+import java.util.Random;
+
+class OrderBookBench
+{
+  /**
+   * Time the cost of matching an incoming order, and of cancelling a
+   * resting one, against books of increasing depth. The book is kept at
+   * its depth by replacing each order taken out of it.
+   *
+   * @param args [no. of operations timed per depth]
+   */
+  public static void main(String[] args)
+  {
+    int ops = args.length > 0 ? Integer.parseInt(args[0]) : 200000;
+
+    StockMarket market = new StockMarket("bench", null, null);
+    Random      random = new Random(1);
+
+    System.out.printf("%10s %12s %12s%n", "depth", "match ns", "cancel ns");
+
+    for (int depth = 10; depth <= 1000000; depth *= 10)
+    {
+      OrderBook book   = new OrderBook();
+      Order[]   resting = new Order[depth];
+
+      // One ask per price level, above a bid at 1
+      for (int i = 0; i < depth; i++)
+      {
+        resting[i] = market.new Order(OrderType.ASK, 2 + i, 10, market, 0);
+        book.add(resting[i]);
+      }
+      book.add(market.new Order(OrderType.BID, 1, 10, market, 0));
+
+      long matchNanos = 0, cancelNanos = 0;
+
+      for (int n = 0; n < ops; n++)
+      {
+        // Bid crossing the best ask, matched as StockMarket does
+        Order bid = market.new Order(OrderType.BID, book.bestPrice(OrderType.ASK),
+                                     10, market, 0);
+        long  t   = System.nanoTime();
+
+        book.add(bid);
+        while (book.contains(bid) && book.crosses(bid))
+        {
+          Order ask    = book.best(OrderType.ASK);
+          long  volume = Math.min(bid.volume, ask.volume);
+
+          book.fill(bid, volume);
+          book.fill(ask, volume);
+        }
+        matchNanos += System.nanoTime() - t;
+
+        book.add(market.new Order(OrderType.ASK, bid.price, 10, market, 0));
+
+        // Cancel an order anywhere in the book, and replace it
+        int   i = random.nextInt(depth);
+        Order o = book.best(OrderType.ASK);
+
+        if (resting[i].level != null)
+          o = resting[i];
+
+        t = System.nanoTime();
+        book.remove(o);
+        cancelNanos += System.nanoTime() - t;
+
+        resting[i] = market.new Order(OrderType.ASK, o.price, 10, market, 0);
+        book.add(resting[i]);
+      }
+
+      System.out.printf("%10d %12.1f %12.1f%n", depth,
+                        (double) matchNanos / ops, (double) cancelNanos / ops);
+    }
+  }
+}
@@ -0,0 +1,86 @@
+/**
+ * OrderExpiry : Timing wheel for the expiry of StockMarket orders
+ *
+ * Date        : October 2026
+ *
+ * Comments    : Orders are placed in the slot for the step they expire
+ *               in, modulo the size of the wheel, and indexed there by
+ *               order id so that cancelled orders can be removed directly.
+ *               Each step only the orders in the current slot are
+ *               examined; orders expiring on a later turn of the wheel are
+ *               left in place.
+ */
+package core;
+
+import core.StockMarket.Order;
+
+import java.util.*;
+
+class OrderExpiry
+{
+  private static final int SLOTS = 64;        // Power of 2
+
+  private final List<LinkedHashMap<Long, Order>> slots = new ArrayList<>(SLOTS);
+
+  OrderExpiry()
+  {
+    for (int i = 0; i < SLOTS; i++)
+      slots.add(new LinkedHashMap<>());
+  }
+
+  /**
+   * Add order to the wheel. Orders that never expire are ignored.
+   *
+   * @param o Order
+   */
+  void add(Order o)
+  {
+    if (o.expires >= 0)
+      slot(o.expires).put(o.id, o);
+  }
+
+  /**
+   * Remove order from the wheel.
+   *
+   * @param o Order
+   */
+  void remove(Order o)
+  {
+    if (o.expires >= 0)
+      slot(o.expires).remove(o.id);
+  }
+
+  /**
+   * Remove and return the orders expiring at the specified step.
+   *
+   * @param step Step (market clock)
+   * @return orders expiring, in order of placement
+   */
+  List<Order> expire(long step)
+  {
+    LinkedHashMap<Long, Order> slot = slot(step);
+
+    if (slot.isEmpty())
+      return Collections.emptyList();
+
+    ArrayList<Order> expired = new ArrayList<>();
+
+    Iterator<Order> it = slot.values().iterator();
+    while (it.hasNext())
+    {
+      Order o = it.next();
+
+      if (o.expires == step)
+      {
+        expired.add(o);
+        it.remove();
+      }
+    }
+    return expired;
+  }
+
+  private LinkedHashMap<Long, Order> slot(long step)
+  {
+    return slots.get((int) (step & (SLOTS - 1)));
+  }
+}
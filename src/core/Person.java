@@ -77,12 +77,11 @@ public class Person extends Agent
   /**
    * Initialisation is done here to accomodate GSON loading from file.
    *
-   * @param markets Market group to be used by this agent
+   * @param g Government for this agent
    */
   public void init(Govt g)
   {
     super.init(g);
-    this.markets = g.markets;
 
     // Profile may be null if we are loading from saved file, and
     // are still constructing the agent.
@@ -155,7 +154,7 @@ public class Person extends Agent
 
   public boolean unemployed()
   {
-    return employer == markets.getMarket("Labour") || employer == null;
+    return employer == getLabourMarket() || employer == null;
   }
 
   /**
@@ -243,7 +242,7 @@ public class Person extends Agent
     // If they´re already unemployed then there´s no action.
     if (!unemployed)
     {
-      labour = (LabourMarket)markets.getMarket("Labour");
+      labour = getLabourMarket();
 
       // Post myself back onto the job market at my current salary.
 
@@ -260,7 +259,7 @@ public class Person extends Agent
   public void setSelfEmployed()
   {
      if(unemployed||employer==null){
-    	((LabourMarket)markets.getMarket("Labour")).hire(this); 
+    	getLabourMarket().hire(this); 
      }else{
         employer.fireEmployee(this, null);
      }
@@ -288,11 +287,12 @@ public class Person extends Agent
     LabourMarket market;
 
     this.markets = m;
+    this.labourMarket = null;
     // Register at the labour market.
 
     if (employer == null)
     {
-      if ((market = this.markets.getLabourMarket()) == null)
+      if ((market = getLabourMarket()) == null)
       {
         throw new RuntimeException("No labour market for " + this.name);
       }
@@ -338,7 +338,7 @@ public class Person extends Agent
       {
         // Is this a simple consumption item, or does it require a bank
         // loan
-        market = markets.getMarket(need.store.product);
+        market = markets.getMarket(need.productId);
 
         assert(market == null) : "Market missing for product " + need.store.product;
         // Attempt to borrow if necessary.
@@ -373,6 +373,12 @@ public class Person extends Agent
              }
            }
         }
+        // Call auction markets deliver when the market is cleared at
+        // the end of the step.
+        else if(market.callAuction)
+        {
+          market.submitOrder(this, need, need.getRequired(), -1);
+        }
         else
         {
           Inventory newItems = market.buy(-1, need.getRequired(),
@@ -421,7 +427,9 @@ public class Person extends Agent
     govt.payUBI(getAccount());
     
     // payTax(govt.personalTaxRate, govt.personalCutoff);
-    govt.payPersonalTax(this.getAccount(), s_income.get());
+    holdIncome(Statistic.Consumer.MODEL, govt.personalTaxRate != 0);
+    if (govt.personalTaxRate != 0)
+      govt.payPersonalTax(this.getAccount(), s_income.get());
   }
   
   //added by Anton
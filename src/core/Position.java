@@ -0,0 +1,106 @@
+package core;
+
+import java.util.PriorityQueue;
+
+/**
+ * Program : Threadneedle
+ * Date    : October 2026
+ *
+ * Position in a single share, held as lots of shares bought at the same
+ * price. Sales are taken from the cheapest lots first. Totals are kept as
+ * lots are added and removed, so that recording a trade costs O(log lots)
+ * regardless of its volume.
+ */
+public class Position {
+
+  private static class Lot implements Comparable<Lot> {
+    final long price;
+    long quantity;
+
+    Lot(long price, long quantity) {
+      this.price = price;
+      this.quantity = quantity;
+    }
+
+    @Override
+    public int compareTo(Lot o) {
+      return Long.compare(price, o.price);
+    }
+  }
+
+  private final PriorityQueue<Lot> lots = new PriorityQueue<>();
+
+  private long quantity = 0;   // No. of shares held
+  private long total = 0;      // Total cost of shares held
+  private long high = Long.MIN_VALUE;
+
+  /**
+   * Record purchase of shares.
+   *
+   * @param price  price paid per share
+   * @param volume no. of shares
+   */
+  public void add(long price, long volume) {
+    if (volume <= 0) return;
+
+    lots.add(new Lot(price, volume));
+    quantity += volume;
+    total += price * volume;
+    high = Math.max(high, price);
+  }
+
+  /**
+   * Record sale of shares. The cheapest shares are sold first.
+   *
+   * @param volume no. of shares
+   * @return no. of shares removed (less than volume if not enough held)
+   */
+  public long remove(long volume) {
+    long removed = 0;
+
+    while (removed < volume && !lots.isEmpty()) {
+      Lot lot = lots.peek();
+      long q = Math.min(lot.quantity, volume - removed);
+
+      lot.quantity -= q;
+      total -= lot.price * q;
+      removed += q;
+
+      if (lot.quantity == 0) {
+        lots.poll();
+      }
+    }
+    quantity -= removed;
+
+    // only the cheapest lots are removed, so the high only changes when
+    // the position is closed
+    if (lots.isEmpty()) {
+      high = Long.MIN_VALUE;
+    }
+    return removed;
+  }
+
+  public boolean isEmpty() {
+    return quantity == 0;
+  }
+
+  public long getQuantity() {
+    return quantity;
+  }
+
+  public long getTotal() {
+    return total;
+  }
+
+  public long getAverage() {
+    return quantity == 0 ? 0 : total / quantity;
+  }
+
+  public long getLow() {
+    return lots.isEmpty() ? Long.MAX_VALUE : lots.peek().price;
+  }
+
+  public long getHigh() {
+    return high;
+  }
+}
@@ -14,16 +14,13 @@
 
 package core;
 
-import java.util.*;
-
 public class PreferentialShares extends Shares
 {
   public char shareType = 'A';        // Type that can be assigned to share
 
-  public PreferentialShares(String name, long quantity, long issuePrice,
-                            Company issuer, LinkedList<Shares> masterList)
+  public PreferentialShares(CapTable table, Agent owner, long quantity)
   {
-    super(name, quantity, issuePrice, issuer, masterList);
+    super(table, owner, quantity);
   }
 
 }
@@ -0,0 +1,115 @@
+/* Program  : Threadneedle
+ *
+ * ProductRegistry : Directory of the products traded in the simulation.
+ *
+ * Date     : October 2026
+ *
+ * Comments: Each product name is assigned a small integer id the first
+ *           time it is registered (normally during configuration load).
+ *           Needs, inventories, widgets and markets carry the id, so that
+ *           markets can be resolved through an array during evaluation
+ *           rather than by searching on the product name.
+ *
+ *           Product names are case sensitive. A warning is printed at
+ *           registration if a name differs only in case from an existing
+ *           product, since this is almost always a configuration error.
+ */
+package core;
+
+import java.util.*;
+
+public final class ProductRegistry
+{
+  public static final int NONE = -1;      // Id for unregistered/no product
+
+  private static HashMap<String, Integer> ids   = new HashMap<>();
+  private static ArrayList<String>        names = new ArrayList<>();
+
+  private ProductRegistry()
+  {
+  }
+
+  /**
+   * Return the id for a product, registering it if it hasn't been seen
+   * before. Registration is the configuration load path, and is where
+   * case mismatches between product names are reported.
+   *
+   * @param name Name of product
+   * @return id for product, or NONE if name is null
+   */
+  public static int register(String name)
+  {
+    if (name == null)
+      return NONE;
+
+    Integer id = ids.get(name);
+
+    if (id != null)
+      return id;
+
+    for (String existing : names)
+    {
+      if (existing.equalsIgnoreCase(name))
+      {
+        System.out.println("***Product names are case sensitive: " + name
+                           + " registered as a new product***\nDid find"
+                           + " caseInsensitive match " + existing);
+      }
+    }
+
+    id = names.size();
+    ids.put(name, id);
+    names.add(name);
+
+    return id;
+  }
+
+  /**
+   * Return the id for an existing product, without registering it.
+   *
+   * @param name Name of product
+   * @return id for product, or NONE if not registered
+   */
+  public static int getId(String name)
+  {
+    if (name == null)
+      return NONE;
+
+    Integer id = ids.get(name);
+
+    return id == null ? NONE : id;
+  }
+
+  /**
+   * Return the name of the product with the specified id.
+   *
+   * @param id Product id
+   * @return Product name, or null if id is not registered
+   */
+  public static String getName(int id)
+  {
+    if (id < 0 || id >= names.size())
+      return null;
+
+    return names.get(id);
+  }
+
+  /**
+   * Return no. of products registered.
+   *
+   * @return no. of products
+   */
+  public static int size()
+  {
+    return names.size();
+  }
+
+  /**
+   * Clear all products - used for simulation reset.
+   */
+  public static void resetAll()
+  {
+    ids.clear();
+    names.clear();
+  }
+}
@@ -2,6 +2,42 @@
  *
  * Author   : Stephan Schiffel
  * Date     : October 2021
+ *
+ * Comments : Decisions for all Python driven investors are requested in a
+ *            single call per step. The first investor evaluated in a step
+ *            collects the state of every live PythonStockInvestor, packs
+ *            it into a byte array (STATE_LONGS big endian longs per
+ *            investor, in the order of the comma separated agent ids),
+ *            and receives one action code per investor in return. Each
+ *            investor then carries out its own action when evaluated.
+ *
+ *            If the Python side doesn't implement getNextActions(), the
+ *            per investor getNextAction() call is used instead.
+ *
+ *            With pipeline=true the request is pipelined instead: states
+ *            are taken at the start of the step (see startStep()) and
+ *            sent from a background thread, so that Python works while
+ *            the other agents are evaluated. With latency=0 the actions
+ *            are collected when the first investor is evaluated. With
+ *            latency=1 they are applied in the following step, and if
+ *            deterministic=false, late actions don't hold up the
+ *            simulation - investors wait until the most recent completed
+ *            request can be applied.
+ *
+ *            When the simulation is driven by a SimulationEnvironment,
+ *            actions are supplied by its step() call instead, and a zombie
+ *            bank ends the episode rather than the program.
+ *
+ *            If the experience property is set, each investor's
+ *            transitions (state, action, change in net worth, next state)
+ *            are appended to an ExperienceLog with that path prefix. The
+ *            log is kept open across simulation resets, so each episode is
+ *            appended after the last.
+ *
+ *            Alternatively, if the shm property names a file, py4j isn't
+ *            used at all: states and actions are exchanged through a
+ *            memory mapped file (see SharedMemoryBridge), which the
+ *            Python side can read without copying or decoding.
  */
 package core;
 
@@ -9,6 +45,13 @@ import com.google.gson.annotations.Expose;
 import core.StockMarket.Order;
 import core.StockMarket.OrderType;
 
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.TreeSet;
 import java.util.stream.Collectors;
 import java.util.*;
@@ -17,6 +60,7 @@ import static base.Base.*;
 
 import py4j.ClientServer;
 import py4j.GatewayServer;
+import py4j.Py4JException;
 
 
 public class PythonStockInvestor extends StockInvestor
@@ -42,8 +86,64 @@ public class PythonStockInvestor extends StockInvestor
 
   public static interface IPythonStockInvestor {
       public String getNextAction(int step, String agentId, State s);
+
+      /**
+       * Return actions for a batch of investors.
+       *
+       * @param step     simulation step
+       * @param agentIds comma separated agent ids
+       * @param states   STATE_LONGS longs per agent: deposit, debt,
+       *                 shareHolding, bidPrice, askPrice, isZombie (0/1)
+       * @return one action code per agent (index into ACTIONS)
+       */
+      public byte[] getNextActions(int step, String agentIds, byte[] states);
+  }
+
+  // Action codes used by getNextActions()
+  public static final String[] ACTIONS = {"sellShares", "liquidate", "buyShares", "requestLoan", "wait"};
+  public static final int STATE_LONGS = 6;
+
+  // Live python driven investors, in order of creation
+  private static LinkedHashSet<PythonStockInvestor> investors = new LinkedHashSet<>();
+  private static int     batchStep = -1;      // Step of last batch request
+  private static boolean batched   = true;    // Python side supports batches
+  private static SharedMemoryBridge shm = null;  // Shared memory exchange
+  private static int[]   shmActions;
+  private static boolean external  = false;   // Actions set by environment
+  private static boolean failed    = false;   // A bank has become a zombie
+
+  // Pipelined requests
+  private static boolean pipelined     = false;
+  private static int     latency       = 0;   // Steps before actions apply
+  private static boolean deterministic = true; // Wait for late actions
+  private static ExecutorService pipeline = null;
+  private static ArrayDeque<Request> requests = new ArrayDeque<>();
+
+  /**
+   * A batch request: the investors and their states at the time it was
+   * made, and the actions when they arrive.
+   */
+  private static class Request {
+    int step;
+    ArrayList<PythonStockInvestor> batch;
+    String ids;
+    byte[] states;
+    Future<byte[]> actions;
   }
 
+  private static ExperienceLog experience = null;
+
+  // Rich observations, from features shared between investors
+  static final ObservationBuilder observations = new ObservationBuilder();
+
+  private String action = null;               // Action for current step
+
+  // Last transition start, for the experience log
+  private long[] lastObs    = null;
+  private int    lastAction = -1;
+  private int    lastStep;
+  private long   lastWorth;
+
   @Override
   // Main loop for agent.
   public void evaluate(boolean report, int step) 
@@ -51,12 +151,21 @@ public class PythonStockInvestor extends StockInvestor
     payDebt();
     System.out.println(name + ": evaluate step " + step + ", employer: " + employer.name);
     
-    State s;
     if (stockMarket != null) {
-      s = new State(getDeposit(), getDebt(), getShareholding(stockMarket.name), stockMarket.getBidPrice(), stockMarket.getAskPrice(), getBank().zombie);
-      System.out.println(s.deposit);
-      String action = pythonStockInvestor.getNextAction(step, this.name, s);
-      System.out.println(name + ": action =" + action);
+      if (batched && !external && batchStep != step) {
+        requestActions(step);
+      }
+      if (action == null && (shm != null || external || (pipelined && batched))) {
+        action = "wait";                    // no action for this step
+      } else if (action == null) {
+        State s = getState();
+        DEBUG(name + ": deposit " + s.deposit);
+        action = pythonStockInvestor.getNextAction(step, this.name, s);
+      }
+      DEBUG(name + ": action =" + action);
+      if (experience != null) {
+        record(step);
+      }
       if (action.equals("sellShares")) {
         sellShares();
       } else if (action.equals("liquidate")) {
@@ -72,8 +181,303 @@ public class PythonStockInvestor extends StockInvestor
     } else {
       System.out.println(name + ": has no stockmarket yet");
     }
+    action = null;
     if (getBank().zombie) {
-      System.exit(0);
+      if (external) {
+        failed = true;
+      } else {
+        System.exit(0);
+      }
+    }
+  }
+
+  State getState() {
+    return new State(getDeposit(), getDebt(), getShareholding(stockMarket.name), stockMarket.getBidPrice(), stockMarket.getAskPrice(), getBank().zombie);
+  }
+
+  /**
+   * Return the full observation vector for this investor, see
+   * ObservationBuilder.getFeatureNames().
+   *
+   * @return observation
+   */
+  public double[] getObservation() {
+    double[] obs = new double[observations.size()];
+    observations.observe(this, stockMarket, obs, 0);
+    return obs;
+  }
+
+  /**
+   * Return net worth, with shares valued at the bid price.
+   *
+   * @return net worth
+   */
+  long netWorth() {
+    return getDeposit() - getDebt() + getShareholding(stockMarket.name) * stockMarket.getBidPrice();
+  }
+
+  /**
+   * Log the transition completed by this step's action, and start the next.
+   *
+   * @param step simulation step
+   */
+  private void record(int step) {
+    State s = getState();
+    long[] obs = {s.deposit, s.debt, s.shareHolding, s.bidPrice, s.askPrice, s.isZombie ? 1 : 0};
+    long worth = netWorth();
+
+    if (lastAction >= 0) {
+      experience.append(lastStep, Id, lastObs, lastAction, worth - lastWorth, obs);
+    }
+    lastObs = obs;
+    lastAction = Arrays.asList(ACTIONS).indexOf(action);
+    lastStep = step;
+    lastWorth = worth;
+  }
+
+  /**
+   * Request the actions of all python investors with a stock market for
+   * this step, in a single call.
+   *
+   * @param step simulation step
+   */
+  private static void requestActions(int step) {
+    batchStep = step;
+
+    if (shm != null) {
+      exchangeActions(step);
+      return;
+    }
+    if (pipelined) {
+      collectActions(step);
+      return;
+    }
+
+    Request r = snapshot(step);
+    try {
+      apply(r, pythonStockInvestor.getNextActions(step, r.ids, r.states));
+    } catch (Py4JException e) {
+      unbatched();
+    }
+  }
+
+  /**
+   * Send the states of the python investors for a pipelined request, at the
+   * start of a step before any agents have been evaluated.
+   *
+   * @param step simulation step
+   */
+  public static void startStep(int step) {
+    if (!pipelined || !batched || external || shm != null || investors.isEmpty()) {
+      return;
+    }
+    if (pipeline == null) {
+      pipeline = Executors.newSingleThreadExecutor(r -> {
+        Thread t = new Thread(r, "PythonStockInvestor");
+        t.setDaemon(true);
+        return t;
+      });
+    }
+
+    Request r = snapshot(step);
+    r.actions = pipeline.submit(() -> pythonStockInvestor.getNextActions(r.step, r.ids, r.states));
+    requests.add(r);
+  }
+
+  /**
+   * Apply the pipelined request due in this step, if any.
+   *
+   * @param step simulation step
+   */
+  private static void collectActions(int step) {
+    int due = step - latency;
+    Request ready = null;
+
+    if (deterministic || latency == 0) {
+      while (!requests.isEmpty() && requests.peek().step < due) {
+        requests.poll();
+      }
+      if (!requests.isEmpty() && requests.peek().step == due) {
+        ready = requests.poll();
+      }
+    } else {
+      while (!requests.isEmpty() && requests.peek().step <= due
+             && requests.peek().actions.isDone()) {
+        ready = requests.poll();
+      }
+    }
+    if (ready == null) {
+      return;
+    }
+
+    try {
+      apply(ready, ready.actions.get());
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new RuntimeException("Interrupted waiting for python actions");
+    } catch (ExecutionException e) {
+      if (e.getCause() instanceof Py4JException) {
+        unbatched();
+      } else {
+        throw new RuntimeException("Python request failed: " + e.getCause(), e.getCause());
+      }
+    }
+  }
+
+  private static Request snapshot(int step) {
+    Request r = new Request();
+    r.step = step;
+    r.batch = active();
+
+    ByteBuffer states = ByteBuffer.allocate(r.batch.size() * STATE_LONGS * Long.BYTES);
+    StringBuilder ids = new StringBuilder();
+
+    for (PythonStockInvestor p : r.batch) {
+      State s = p.getState();
+      states.putLong(s.deposit).putLong(s.debt).putLong(s.shareHolding)
+            .putLong(s.bidPrice).putLong(s.askPrice).putLong(s.isZombie ? 1 : 0);
+      if (ids.length() > 0) ids.append(',');
+      ids.append(p.name);
+    }
+    r.ids = ids.toString();
+    r.states = states.array();
+    return r;
+  }
+
+  private static void apply(Request r, byte[] actions) {
+    for (int i = 0; i < r.batch.size(); i++) {
+      int code = (actions != null && i < actions.length) ? actions[i] : -1;
+      r.batch.get(i).action = (code >= 0 && code < ACTIONS.length) ? ACTIONS[code] : "unknown";
+    }
+  }
+
+  private static void unbatched() {
+    System.out.println("Python side has no getNextActions(), requesting actions individually");
+    batched = false;
+    requests.clear();
+  }
+
+  /**
+   * Exchange states and actions for this step through shared memory.
+   *
+   * @param step simulation step
+   */
+  private static void exchangeActions(int step) {
+    ArrayList<PythonStockInvestor> batch = active();
+
+    for (int i = 0; i < batch.size(); i++) {
+      PythonStockInvestor p = batch.get(i);
+      StockMarket m = p.stockMarket;
+
+      shm.put(i, SharedMemoryBridge.OBS_DEPOSIT, p.getDeposit());
+      shm.put(i, SharedMemoryBridge.OBS_DEBT, p.getDebt());
+      shm.put(i, SharedMemoryBridge.OBS_SHAREHOLDING, p.getShareholding(m.name));
+      shm.put(i, SharedMemoryBridge.OBS_BIDPRICE, m.getBidPrice());
+      shm.put(i, SharedMemoryBridge.OBS_ASKPRICE, m.getAskPrice());
+      shm.put(i, SharedMemoryBridge.OBS_ZOMBIE, p.getBank().zombie ? 1 : 0);
+      shm.put(i, SharedMemoryBridge.OBS_LASTPRICE, m.lastPrice);
+      shm.put(i, SharedMemoryBridge.OBS_BIDS, m.numBids());
+      shm.put(i, SharedMemoryBridge.OBS_ASKS, m.numAsks());
+      shm.put(i, SharedMemoryBridge.OBS_STEP, step);
+    }
+
+    shm.exchange(step, batch.size(), shmActions);
+
+    for (int i = 0; i < batch.size(); i++) {
+      int code = shmActions[i];
+      batch.get(i).action = (code >= 0 && code < ACTIONS.length) ? ACTIONS[code] : "unknown";
+    }
+  }
+
+  /**
+   * Return the python investors with a stock market, in order of creation.
+   * This is the order states are sent and actions received in.
+   *
+   * @return list of investors
+   */
+  static ArrayList<PythonStockInvestor> active() {
+    ArrayList<PythonStockInvestor> batch = new ArrayList<>(investors.size());
+    for (PythonStockInvestor p : investors) {
+      if (p.stockMarket != null) {
+        batch.add(p);
+      }
+    }
+    return batch;
+  }
+
+  /**
+   * Set the actions for the next step, when driven by an environment
+   * rather than by requests to Python.
+   *
+   * @param step    simulation step actions are for
+   * @param actions one action code per active() investor
+   */
+  static void setActions(int step, int[] actions) {
+    ArrayList<PythonStockInvestor> batch = active();
+
+    batchStep = step;
+    for (int i = 0; i < batch.size(); i++) {
+      int code = i < actions.length ? actions[i] : -1;
+      batch.get(i).action = (code >= 0 && code < ACTIONS.length) ? ACTIONS[code] : "unknown";
+    }
+  }
+
+  /**
+   * Take actions from setActions() instead of from Python.
+   *
+   * @param e t/f driven by environment
+   */
+  static void setExternal(boolean e) {
+    external = e;
+  }
+
+  /**
+   * Return t/f a python investor's bank has become a zombie since the last
+   * reset.
+   *
+   * @return t/f
+   */
+  static boolean hasFailed() {
+    return failed;
+  }
+
+  /**
+   * Open the shared memory exchange, if it isn't already open.
+   *
+   * @param filename file to map
+   * @param capacity max no. of investors
+   */
+  private static void openSharedMemory(String filename, int capacity) {
+    if (shm == null) {
+      try {
+        shm = new SharedMemoryBridge(new File(filename), capacity);
+        shmActions = new int[capacity];
+        System.out.println("Exchanging python investor actions through " + filename);
+      } catch (IOException e) {
+        throw new RuntimeException("Failed to map shared memory file " + filename + ": " + e);
+      }
+    }
+  }
+
+  /**
+   * Clear python investors - used for simulation reset.
+   */
+  public static void resetAll() {
+    investors.clear();
+    batchStep = -1;
+    batched = true;
+    failed = false;
+    observations.reset();
+    pipelined = false;
+    latency = 0;
+    deterministic = true;
+    for (Request r : requests) {
+      r.actions.cancel(false);
+    }
+    requests.clear();
+    if (shm != null) {
+      shm.close();
+      shm = null;
     }
   }
 
@@ -91,7 +495,28 @@ public class PythonStockInvestor extends StockInvestor
   {
     super(name, g,b,properties);
     employer = this; // we are self employed
-    initPythonConnection();
+    if (properties.containsKey("shm")) {
+      openSharedMemory(properties.get("shm"),
+                       Integer.parseInt(properties.getOrDefault("shmcapacity", "1024")));
+    } else if (!external) {
+      initPythonConnection();
+    }
+    if (experience != null && properties.containsKey("experience")
+        && !experience.getPrefix().equals(properties.get("experience"))) {
+      experience.close();
+      experience = null;
+    }
+    if (properties.containsKey("experience") && experience == null) {
+      experience = new ExperienceLog(properties.get("experience"), STATE_LONGS,
+                                     Integer.parseInt(properties.getOrDefault("experiencesize", "65536")),
+                                     Integer.parseInt(properties.getOrDefault("experiencefiles", "0")));
+    }
+    if (properties.containsKey("pipeline")) {
+      pipelined = Boolean.parseBoolean(properties.get("pipeline"));
+      latency = Integer.parseInt(properties.getOrDefault("latency", "0"));
+      deterministic = Boolean.parseBoolean(properties.getOrDefault("deterministic", "true"));
+    }
+    investors.add(this);
     String stockMarketName = properties.get("stockmarket");
     if (stockMarketName == null) {
       System.out.println(name + ": ERROR: need to set stockmarket property");
@@ -104,7 +529,10 @@ public class PythonStockInvestor extends StockInvestor
   public PythonStockInvestor()
   {
     super();
-    initPythonConnection();
+    if (!external) {
+      initPythonConnection();
+    }
+    investors.add(this);
   }
 
   private static IPythonStockInvestor pythonStockInvestor;
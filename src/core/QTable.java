@@ -0,0 +1,221 @@
+package core;
+
+import java.io.*;
+import java.util.Arrays;
+
+/**
+ * Program : Threadneedle
+ * Date    : October 2026
+ *
+ * Table of action values for tabular reinforcement learning, keyed by an
+ * encoded state. States are held in an open addressing hash table of
+ * primitive longs (linear probing), with the values for each state's
+ * actions stored contiguously in a parallel double array, so lookups and
+ * updates don't allocate.
+ *
+ * File format (big endian):
+ *
+ *   magic(int) actions(int) states(int), then for each state:
+ *   key(long) value(double) x actions
+ */
+public class QTable {
+
+  private static final int MAGIC = 0x51544231;    // "QTB1"
+  private static final long EMPTY = Long.MIN_VALUE;
+
+  private final int actions;
+  private long[] keys;
+  private double[] values;
+  private int size = 0;
+
+  public QTable(int actions) {
+    this(actions, 1024);
+  }
+
+  public QTable(int actions, int capacity) {
+    this.actions = actions;
+    allocate(Integer.highestOneBit(Math.max(capacity, 16) - 1) << 1);
+  }
+
+  /**
+   * Return the value of an action in a state. Unknown states have value 0.
+   *
+   * @param state  encoded state (any value except Long.MIN_VALUE)
+   * @param action action index
+   * @return value
+   */
+  public double get(long state, int action) {
+    int slot = find(state);
+    return keys[slot] == EMPTY ? 0 : values[slot * actions + action];
+  }
+
+  /**
+   * Set the value of an action in a state.
+   *
+   * @param state  encoded state
+   * @param action action index
+   * @param value  new value
+   */
+  public void set(long state, int action, double value) {
+    values[slot(state) * actions + action] = value;
+  }
+
+  /**
+   * Move the value of an action towards a target.
+   *
+   * @param state  encoded state
+   * @param action action index
+   * @param target target value
+   * @param alpha  learning rate
+   */
+  public void update(long state, int action, double target, double alpha) {
+    int i = slot(state) * actions + action;
+    values[i] += alpha * (target - values[i]);
+  }
+
+  /**
+   * Return the action with the highest value in a state. Ties, including
+   * unknown states, go to the lowest action index.
+   *
+   * @param state encoded state
+   * @return action index
+   */
+  public int best(long state) {
+    int slot = find(state);
+    if (keys[slot] == EMPTY) return 0;
+
+    int base = slot * actions;
+    int best = 0;
+    for (int a = 1; a < actions; a++) {
+      if (values[base + a] > values[base + best]) {
+        best = a;
+      }
+    }
+    return best;
+  }
+
+  /**
+   * Return the highest action value in a state.
+   *
+   * @param state encoded state
+   * @return value
+   */
+  public double max(long state) {
+    int slot = find(state);
+    if (keys[slot] == EMPTY) return 0;
+
+    int base = slot * actions;
+    double max = values[base];
+    for (int a = 1; a < actions; a++) {
+      max = Math.max(max, values[base + a]);
+    }
+    return max;
+  }
+
+  public int size() {
+    return size;
+  }
+
+  public int getActions() {
+    return actions;
+  }
+
+  /**
+   * Write the table to a file.
+   *
+   * @param file file to write
+   * @throws IOException on failure
+   */
+  public void save(File file) throws IOException {
+    try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)))) {
+      out.writeInt(MAGIC);
+      out.writeInt(actions);
+      out.writeInt(size);
+      for (int slot = 0; slot < keys.length; slot++) {
+        if (keys[slot] != EMPTY) {
+          out.writeLong(keys[slot]);
+          for (int a = 0; a < actions; a++) {
+            out.writeDouble(values[slot * actions + a]);
+          }
+        }
+      }
+    }
+  }
+
+  /**
+   * Read a table from a file.
+   *
+   * @param file file to read
+   * @return table
+   * @throws IOException on failure, or if the file isn't a table
+   */
+  public static QTable load(File file) throws IOException {
+    try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+      if (in.readInt() != MAGIC) {
+        throw new IOException(file + " is not a Q table");
+      }
+      int actions = in.readInt();
+      int states = in.readInt();
+
+      QTable table = new QTable(actions, states * 2);
+      for (int i = 0; i < states; i++) {
+        int base = table.slot(in.readLong()) * actions;
+        for (int a = 0; a < actions; a++) {
+          table.values[base + a] = in.readDouble();
+        }
+      }
+      return table;
+    }
+  }
+
+  // Slot holding state, or the empty slot it would go in
+  private int find(long state) {
+    int mask = keys.length - 1;
+    int slot = hash(state) & mask;
+
+    while (keys[slot] != EMPTY && keys[slot] != state) {
+      slot = (slot + 1) & mask;
+    }
+    return slot;
+  }
+
+  // Slot holding state, adding it if necessary
+  private int slot(long state) {
+    int slot = find(state);
+
+    if (keys[slot] == EMPTY) {
+      if ((size + 1) * 4 > keys.length * 3) {
+        grow();
+        slot = find(state);
+      }
+      keys[slot] = state;
+      size++;
+    }
+    return slot;
+  }
+
+  private void grow() {
+    long[] oldKeys = keys;
+    double[] oldValues = values;
+
+    allocate(keys.length * 2);
+    for (int i = 0; i < oldKeys.length; i++) {
+      if (oldKeys[i] != EMPTY) {
+        int slot = find(oldKeys[i]);
+        keys[slot] = oldKeys[i];
+        System.arraycopy(oldValues, i * actions, values, slot * actions, actions);
+      }
+    }
+  }
+
+  private void allocate(int capacity) {
+    keys = new long[capacity];
+    Arrays.fill(keys, EMPTY);
+    values = new double[capacity * actions];
+  }
+
+  private static int hash(long key) {
+    key *= 0x9E3779B97F4A7C15L;
+    return (int) (key ^ (key >>> 32));
+  }
+}
@@ -0,0 +1,210 @@
+package core;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+
+import base.Base;
+
+/**
+ * Program : Threadneedle
+ * Date    : October 2026
+ *
+ * Tabular SARSA (or Q-learning) investor strategy, a Java version of the
+ * learner in python_stockinvestor/stockinvestor.py. Selected with
+ * strategy=sarsa on an InvestmentCompany, and configured with:
+ *
+ *   qtable   file the Q table is loaded from and saved to (sarsa.q)
+ *   learning sarsa or qlearning (sarsa)
+ *   alpha    learning rate (0.1)
+ *   gamma    discount (0.9998)
+ *   epsilon  exploration rate (0.2)
+ *
+ * The state is the employer's position (no shares, shares, shares worth
+ * more than twice its deposit, or debt exceeding its assets) and the
+ * change in ask price since the last step, in bands of STATEGAP. The
+ * reward is the change in the employer's net worth, with shares valued
+ * at the bid price.
+ *
+ * Investors sharing a qtable file share a single table, which is saved
+ * every SAVE_INTERVAL updates and when the program exits. Under
+ * VectorEnvironment each environment has its own copy of this class, and
+ * so its own table, which is kept in a file named for the environment
+ * (sarsa.q becomes sarsa-env0.q, sarsa-env1.q, ...) rather than all of
+ * them overwriting the one file.
+ */
+public class SarsaInvestorStrategy extends AbstractInvestorStrategy {
+
+  public static final String[] ACTIONS = {"sellShares", "liquidate", "buyShares", "takeProfit", "wait"};
+
+  private static final int STATEGAP = 5;         // Price band width
+  private static final int BANDS = 21;           // Bands either side of 0
+  private static final long INIT = 0;            // State with no history
+  private static final int SAVE_INTERVAL = 10000;
+
+  // Tables by file name, shared between investors
+  private static final HashMap<String, QTable> tables = new HashMap<>();
+  private static final HashMap<QTable, Integer> updates = new HashMap<>();
+
+  private String file = environmentFile("sarsa.q");
+  private boolean sarsa = true;
+  private double alpha = 0.1;
+  private double gamma = 0.9998;
+  private double epsilon = 0.2;
+
+  private QTable table;
+  private long lastState = INIT;
+  private int lastAction = -1;
+  private long lastWorth;
+  private long lastAsk;
+
+  public SarsaInvestorStrategy(StockInvestor investor) {
+    super(investor);
+  }
+
+  @Override
+  public void configure(Map<String, String> properties) {
+    file = environmentFile(properties.getOrDefault("qtable", "sarsa.q"));
+    sarsa = !"qlearning".equalsIgnoreCase(properties.getOrDefault("learning", "sarsa"));
+    alpha = Double.parseDouble(properties.getOrDefault("alpha", String.valueOf(alpha)));
+    gamma = Double.parseDouble(properties.getOrDefault("gamma", String.valueOf(gamma)));
+    epsilon = Double.parseDouble(properties.getOrDefault("epsilon", String.valueOf(epsilon)));
+    table = null;
+  }
+
+  @Override
+  public void executeStrategy(InvestmentStrategyGoal goal) {
+    if (investor.stockMarket == null) return;
+
+    if (goal == InvestmentStrategyGoal.LIQUIDATE) {
+      investor.liquidate();
+      return;
+    }
+    if (table == null) {
+      table = getTable(file);
+    }
+
+    long state = state();
+    int action = choose(state);
+    long worth = netWorth();
+
+    if (lastAction >= 0) {
+      double next = sarsa ? table.get(state, action) : table.max(state);
+      table.update(lastState, lastAction, (worth - lastWorth) + gamma * next, alpha);
+      updated(table, file);
+    }
+
+    lastState = state;
+    lastAction = action;
+    lastWorth = worth;
+    lastAsk = investor.stockMarket.getAskPrice();
+
+    switch (action) {
+      case 0:
+        investor.sellShares();
+        break;
+      case 1:
+        investor.liquidate();
+        break;
+      case 2:
+        investor.buyShares();
+        break;
+      case 3:
+        profitFromPurchases();
+        break;
+      default:
+        break;
+    }
+  }
+
+  // Epsilon greedy choice of action
+  private int choose(long state) {
+    if (Base.random.nextDouble() < epsilon) {
+      return Base.random.nextInt(ACTIONS.length);
+    }
+    return table.best(state);
+  }
+
+  private long state() {
+    if (lastAction < 0) return INIT;
+
+    Agent employer = investor.employer;
+    StockMarket market = investor.stockMarket;
+
+    long shares = employer.getShareholding(market.name);
+    long deposit = employer.getDeposit();
+    int position;
+
+    if (employer.getDebt() >= deposit + market.getBidPrice() * shares) {
+      position = 0;                                // bankrupt
+    } else if (shares == 0) {
+      position = 1;                                // no stock
+    } else if (market.getBidPrice() * shares > deposit * 2) {
+      position = 2;                                // double stock
+    } else {
+      position = 3;                                // own stock
+    }
+
+    long band = Math.floorDiv(market.getAskPrice() - lastAsk, STATEGAP);
+    band = Math.max(-BANDS, Math.min(BANDS, band));
+
+    return 1 + position * (2 * BANDS + 1) + (band + BANDS);
+  }
+
+  private long netWorth() {
+    Agent employer = investor.employer;
+    StockMarket market = investor.stockMarket;
+
+    return employer.getDeposit() - employer.getDebt()
+           + employer.getShareholding(market.name) * market.getBidPrice();
+  }
+
+  // Insert the name of the environment's class loader, if any, before the extension
+  private static String environmentFile(String file) {
+    String env = SarsaInvestorStrategy.class.getClassLoader().getName();
+    if (env == null || !env.startsWith("env")) return file;
+
+    int dot = file.lastIndexOf('.');
+    if (dot <= file.lastIndexOf(File.separatorChar)) return file + "-" + env;
+    return file.substring(0, dot) + "-" + env + file.substring(dot);
+  }
+
+  private static synchronized QTable getTable(String file) {
+    QTable table = tables.get(file);
+
+    if (table == null) {
+      File f = new File(file);
+      if (f.exists()) {
+        try {
+          table = QTable.load(f);
+        } catch (IOException e) {
+          System.err.println("Failed to load Q table " + file + ": " + e.getMessage());
+        }
+      }
+      if (table == null || table.getActions() != ACTIONS.length) {
+        table = new QTable(ACTIONS.length);
+      }
+      tables.put(file, table);
+
+      final QTable t = table;
+      Runtime.getRuntime().addShutdownHook(new Thread(() -> save(t, file)));
+    }
+    return table;
+  }
+
+  private static synchronized void updated(QTable table, String file) {
+    int n = updates.merge(table, 1, Integer::sum);
+    if (n % SAVE_INTERVAL == 0) {
+      save(table, file);
+    }
+  }
+
+  private static synchronized void save(QTable table, String file) {
+    try {
+      table.save(new File(file));
+    } catch (IOException e) {
+      System.err.println("Failed to save Q table " + file + ": " + e.getMessage());
+    }
+  }
+}
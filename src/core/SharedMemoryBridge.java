@@ -0,0 +1,196 @@
+/* Program  : Threadneedle
+ *
+ * SharedMemoryBridge : Exchange of observations and actions with an
+ *                      external (Python) agent through a memory mapped
+ *                      file.
+ *
+ * Date     : October 2026
+ *
+ * Comments : The file holds a header, an observation region and an
+ *            action region. All values are little endian so that the
+ *            regions can be read directly as numpy arrays.
+ *
+ *            Header (HEADER bytes):
+ *              0  int  magic ('TNSM')
+ *              4  int  version
+ *              8  int  capacity     max no. of agents
+ *             12  int  fields       longs per observation (stride / 8)
+ *             16  long seq          incremented by Java when observations
+ *                                   for a step have been written
+ *             24  long ack          set to seq by Python when the actions
+ *                                   for that step have been written
+ *             32  int  step         simulation step of observations
+ *             36  int  count        no. of agents in this step
+ *             40  int  closed       set to 1 by Java on shutdown
+ *
+ *            Observations: capacity records of FIELDS longs (see OBS_*),
+ *            Actions     : capacity ints, one action code per agent.
+ *
+ *            The handshake is a spin on seq/ack: Java publishes seq with
+ *            release semantics once the observations are written, and
+ *            waits for ack == seq before reading the actions. Spinning
+ *            backs off to yields and then short sleeps so an idle peer
+ *            doesn't burn a core.
+ */
+package core;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.concurrent.locks.LockSupport;
+
+public class SharedMemoryBridge
+{
+  public static final int MAGIC   = 0x4d534e54;      // "TNSM" little endian
+  public static final int VERSION = 1;
+  public static final int HEADER  = 64;
+  public static final int FIELDS  = 16;              // longs per observation
+
+  // Observation fields
+  public static final int OBS_DEPOSIT      = 0;
+  public static final int OBS_DEBT         = 1;
+  public static final int OBS_SHAREHOLDING = 2;
+  public static final int OBS_BIDPRICE     = 3;
+  public static final int OBS_ASKPRICE     = 4;
+  public static final int OBS_ZOMBIE       = 5;
+  public static final int OBS_LASTPRICE    = 6;
+  public static final int OBS_BIDS         = 7;      // no. of bids in book
+  public static final int OBS_ASKS         = 8;      // no. of asks in book
+  public static final int OBS_STEP         = 9;
+                                                     // 10..15 unused
+  private static final int SEQ    = 16;
+  private static final int ACK    = 24;
+  private static final int STEP   = 32;
+  private static final int COUNT  = 36;
+  private static final int CLOSED = 40;
+
+  private static final VarHandle LONG =
+    MethodHandles.byteBufferViewVarHandle(long[].class, ByteOrder.LITTLE_ENDIAN);
+  private static final VarHandle INT  =
+    MethodHandles.byteBufferViewVarHandle(int[].class, ByteOrder.LITTLE_ENDIAN);
+
+  // Busy spins before yielding - pointless on a single processor
+  private static final int SPINS =
+    Runtime.getRuntime().availableProcessors() > 1 ? 10_000 : 0;
+  private static final int YIELDS = SPINS + 1_000;
+
+  public long timeout = 60_000;                      // ms to wait for actions
+
+  private final int capacity;
+  private final int obsOffset;
+  private final int actOffset;
+  private final RandomAccessFile file;
+  private final MappedByteBuffer buffer;
+  private long seq = 0;
+
+  /**
+   * Create the shared file and map it.
+   *
+   * @param f        file to map (created or truncated)
+   * @param capacity max no. of agents
+   * @throws IOException if the file can't be created or mapped
+   */
+  public SharedMemoryBridge(File f, int capacity) throws IOException
+  {
+    this.capacity  = capacity;
+    this.obsOffset = HEADER;
+    this.actOffset = HEADER + capacity * FIELDS * Long.BYTES;
+
+    int size = actOffset + capacity * Integer.BYTES;
+
+    file = new RandomAccessFile(f, "rw");
+    file.setLength(0);
+    file.setLength(size);
+
+    buffer = file.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, size);
+    buffer.order(ByteOrder.LITTLE_ENDIAN);
+
+    buffer.putInt(4, VERSION);
+    buffer.putInt(8, capacity);
+    buffer.putInt(12, FIELDS);
+    LONG.setRelease(buffer, SEQ, 0L);
+    LONG.setRelease(buffer, ACK, 0L);
+    INT.setRelease(buffer, 0, MAGIC);                // written last
+  }
+
+  public int getCapacity()
+  {
+    return capacity;
+  }
+
+  /**
+   * Set an observation field for an agent.
+   *
+   * @param agent index of agent
+   * @param field OBS_* field
+   * @param value value
+   */
+  public void put(int agent, int field, long value)
+  {
+    buffer.putLong(obsOffset + (agent * FIELDS + field) * Long.BYTES, value);
+  }
+
+  /**
+   * Publish the observations written for a step, and wait for the peer's
+   * actions.
+   *
+   * @param step    simulation step
+   * @param count   no. of agents written
+   * @param actions array to receive action codes (at least count long)
+   */
+  public void exchange(int step, int count, int[] actions)
+  {
+    if (count > capacity)
+      throw new IllegalArgumentException("Too many agents for shared memory: "
+                                         + count + " > " + capacity);
+
+    buffer.putInt(STEP, step);
+    buffer.putInt(COUNT, count);
+    LONG.setRelease(buffer, SEQ, ++seq);
+
+    long deadline = System.currentTimeMillis() + timeout;
+    int  spins    = 0;
+
+    while ((long) LONG.getAcquire(buffer, ACK) != seq)
+    {
+      if (++spins < SPINS)
+        Thread.onSpinWait();
+      else if (spins < YIELDS)
+        Thread.yield();
+      else
+      {
+        LockSupport.parkNanos(50_000);
+
+        if (System.currentTimeMillis() > deadline)
+          throw new RuntimeException("No response from shared memory peer for step "
+                                     + step);
+      }
+    }
+
+    for (int i = 0; i < count; i++)
+      actions[i] = buffer.getInt(actOffset + i * Integer.BYTES);
+  }
+
+  /**
+   * Tell the peer the simulation has finished, and release the file.
+   */
+  public void close()
+  {
+    INT.setRelease(buffer, CLOSED, 1);
+    buffer.force();
+
+    try
+    {
+      file.close();
+    }
+    catch (IOException e)
+    {
+      System.err.println("Failed to close shared memory file: " + e);
+    }
+  }
+}
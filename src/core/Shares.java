@@ -5,13 +5,14 @@
  * 
  * Author   : Jacky Mallett
  * Date     : October 2012
- * Comments :
+ * Comments : Ownership of shares is held by the issuing company's CapTable.
+ *            Shares are views of a holding in the CapTable, created for
+ *            code which needs a Widget. They aren't products, so their
+ *            names aren't registered with the ProductRegistry.
  */
 
 package core;
 
-import java.util.LinkedList;
-
 public class Shares extends Widget
 {
    long issuePrice; // Price shares are issued at
@@ -23,60 +24,47 @@ public class Shares extends Widget
 
   Agent owner; // Owner of shares (can be company or person)
 
-  /* List of all shares issued by company - updated by Shares when created, 
-     split and merged. */
-  LinkedList<Shares> masterList;
+  CapTable table; // Registry of the shares issued by the company
+
   /**
    * Constructor:
    *
-   * @param name             Symbol for share
-   * @param quantity         Number to create
-   * @param issuePrice       Amount issued for
-   * @param issuer           Company issuing shares
-   * @param masterList       list of all shares
+   * @param table            CapTable shares are held in
+   * @param owner            Owner of shares
+   * @param quantity         Number of shares
    */
 
-   public Shares(String name, long quantity, long issuePrice, Company issuer,
-                 LinkedList<Shares> masterList)
+   public Shares(CapTable table, Agent owner, long quantity)
    {
-        super(name, -1, quantity);
+        super(table.name, -1, quantity, ProductRegistry.NONE);
 
         if (this.quantity <= 0)
             throw new RuntimeException("Invalid quantity of Shares: "+quantity);
 
-        this.issuePrice = issuePrice;
-        this.issuer = issuer;
-        this.masterList = masterList;
-        this.owner = issuer; // Default owner of share is issuer
-
-        masterList.add(this);
+        this.issuePrice = table.issuePrice;
+        this.issuer = table.issuer;
+        this.table = table;
+        this.owner = owner;
    }
 
    /**
     * Constructor: Used internally when widgets are being split apart, in order
     * that quantity manipulations are only done in the base class
     *
-    * @param name            Symbol for share
-    * @param quantity        Number to create
-    * @param issuePrice      Amount issued for
-    * @param issuer          company issuing shares
     * @param s               Shares being derived from
-    * @param masterList      masterlist of shares
     * @param newQ            new quantity
     */
-    public Shares(String name, long quantity, long issuePrice, Company issuer,
-                  LinkedList<Shares> masterList, Shares s, long newQ)
+    Shares(Shares s, long newQ)
     {
-        super(name, -1, s, newQ);
+        super(s.name, -1, s, newQ, ProductRegistry.NONE);
 
 		if ((this.quantity <= 0) || (newQ <= 0))
 			throw new RuntimeException("Invalid quantity of Shares: "
 					+ quantity);
 
-		this.issuePrice = issuePrice;
-		this.issuer = issuer;
-		this.masterList = masterList;
-		masterList.add(this);
+		this.issuePrice = s.issuePrice;
+		this.issuer = s.issuer;
+		this.table = s.table;
 	}
 
 	/**
@@ -98,8 +86,8 @@ public class Shares extends Widget
 
 	public void transfer(Agent newowner)
 	{
-		owner = newowner;
-		newowner.addInvestment(this);
+		if (table.transfer(owner, newowner, quantity))
+			owner = newowner;
 	}
 
 	/**
@@ -114,9 +102,6 @@ public class Shares extends Widget
 
 	public double getDividend(double percent)
 	{
-		System.out.println("div: " + this.quantity + " " + percent + " "
-	    		+ this.issuePrice + " owned by: " + this.owner.name);
-
 		return (100 * this.quantity * percent * this.issuePrice) / 100.0;
 	}
 
@@ -139,16 +124,13 @@ public class Shares extends Widget
 					+ this.quantity() + "<" + newQ);
 		} else
 		{
-			Shares w = new Shares(name, newQ, issuePrice, this.issuer,
-					this.masterList, this, newQ);
+			Shares w = new Shares(this, newQ);
 
 			w.created = this.created;
 			w.owner = this.owner;
 
-//			this.quantity -= newQ; // I think this is a bug, see Widget.java:60
-
 			return w;
-		} // Comment: what happens when this.quantity becomes 0? 
+		}
 	}
 
 	@Override
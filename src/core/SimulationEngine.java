@@ -16,7 +16,10 @@ import base.Base;
 import com.google.gson.Gson;
 import com.google.gson.GsonBuilder;
 import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
 import com.google.gson.JsonObject;
+import statistics.DerivedStatistic;
+import statistics.Distribution;
 import statistics.Statistic;
 
 import java.lang.reflect.*;
@@ -47,6 +50,16 @@ public class SimulationEngine extends Observable
 
   public String description = "";
 
+  public String configFile = "";   // Name of file simulation was loaded from
+
+  // Phases of evaluate(), with time spent in each
+  public static final String[] PHASES = {"govt", "companies", "employees",
+                                         "auctions", "banks", "reporting",
+                                         "statistics"};
+  private final long[] phaseNanos = new long[PHASES.length];
+
+  public MetricsServer metrics = null;  // Optional live metrics endpoint
+
   // Map of branch name to branch - todo: examine structure
   // public HashMap<String, Branch> branchlist = new HashMap<String,
   // Branch>();
@@ -63,6 +76,9 @@ public class SimulationEngine extends Observable
   Statistic s_totalMarketDeposits;
   Statistic s_totalCompanyDeposits;
 
+  Distribution d_workerDeposits;    // Per worker deposits and income
+  Distribution d_workerIncome;
+
   Statistic s_totalValueGoodsSold;  // Total value of goods sold by markets
   Statistic s_calculatedVelocity;   // The V part of the MV/PT equation
   Statistic s_totalTransactions;    // T part of MV/PT equation
@@ -84,6 +100,9 @@ public class SimulationEngine extends Observable
     s_totalCompanyDeposits = Statistic.getStatistic("totalCompanyDeposits",
                                                     "distribution", COUNTER);
 
+    d_workerDeposits = Distribution.getDistribution("workerDeposits", "wealth");
+    d_workerIncome   = Distribution.getDistribution("workerIncome", "wealth");
+
     // Statistics for Macro-economic analysis
 
     s_totalValueGoodsSold = Statistic.getStatistic("mvpt-PT", "mvpt", 
@@ -100,11 +119,17 @@ public class SimulationEngine extends Observable
   public void resetAll()
   {
     description = "";
+    configFile = "";
 
     govt = new BaselGovt(govt.name, "Central Bank", 0);
     govt.hasCentralBank = true;
     govt.setBanks(employees);
 
+    // Close any market data files still open
+    for (Company c : companies)
+      if (c instanceof StockMarket)
+        ((StockMarket) c).feed.close();
+
     employees.clear();
     companies.clear();
     govt.markets.removeAll();
@@ -112,6 +137,8 @@ public class SimulationEngine extends Observable
 
     Base.resetAll();
     Statistic.resetAll();
+    ProductRegistry.resetAll();
+    PythonStockInvestor.resetAll();
 
     // In case this is called from the CLI with a gui in operation.
 
@@ -125,6 +152,9 @@ public class SimulationEngine extends Observable
     s_totalCompanyDeposits = Statistic.getStatistic("totalCompanyDeposits",
                                                     null, COUNTER);
 
+    d_workerDeposits = Distribution.getDistribution("workerDeposits", "wealth");
+    d_workerIncome   = Distribution.getDistribution("workerIncome", "wealth");
+
     s_totalValueGoodsSold  = Statistic.getStatistic("mvpt-PT", "mvpt", COUNTER, 1);
     s_calculatedVelocity   = Statistic.getStatistic("mvpt-V", "mvpt", COUNTER, 1);
     s_totalTransactions = Statistic.getStatistic("mvpt-T", "mvpt", COUNTER, 1);
@@ -147,14 +177,18 @@ public class SimulationEngine extends Observable
     int totalDemand = 0;
     int totalSupply = 0;
     int totalEmployed = 0;
-    int totalSalaries = 0;
     int totalBankDebtors = 0;
 
     DEBUG("====================================================");
 
+    // Python investors' pipelined requests are made before anyone acts
+    PythonStockInvestor.startStep(Base.step);
+
     Collections.shuffle(companies, random);
     Collections.shuffle(employees, random);
 
+    long t = System.nanoTime();
+
     // Run all agent's individual evaluation for this step.
 	//
 	// Order of evaluation is ... an interesting issue. Companies
@@ -165,6 +199,7 @@ public class SimulationEngine extends Observable
 
     govt.evaluate(Base.step, false);
     govt.markets.evaluate(Base.step, false);
+    t = phase(0, t);
 
     // Evaluate Branches
     /*
@@ -176,16 +211,27 @@ public class SimulationEngine extends Observable
     {
       companies.get(i).evaluate(Base.step, false);
     }
+    t = phase(1, t);
 
     // System.out.println("\t ** Evaluating Employees **");
 
-    // Collect employee information for reporting
+    // Collect employee information for reporting. Distributions are only
+    // sampled while observed, and incomes only kept while they are.
+
+    boolean sampleDeposits = d_workerDeposits.isLive();
+    boolean sampleIncome   = d_workerIncome.isLive();
 
     for (int i = 0; i < employees.size(); i++)
     {
       employees.get(i).evaluate(Base.step, true);
       s_totalWorkerDeposits.add(employees.get(i).getDeposit());
-      totalSalaries += employees.get(i).s_income.get();
+
+      if (sampleDeposits)
+        d_workerDeposits.add(employees.get(i).getDeposit());
+
+      employees.get(i).holdIncome(Statistic.Consumer.EXPORT, sampleIncome);
+      if (sampleIncome)
+        d_workerIncome.add(employees.get(i).s_income.get());
 
       totalDemand += employees.get(i).getDemand();
 
@@ -198,6 +244,15 @@ public class SimulationEngine extends Observable
       govt.s_totalActiveMoneySupply.add(Math.abs(employees.get(i).getAccount().getBalance()));
       employees.get(i).resetRoundStatistics();
     }
+    t = phase(2, t);
+
+    // Markets running as call auctions clear all orders from this step
+    // together.
+    govt.markets.clearAuctions(Base.step);
+
+    if(govt.marketArbitrage)
+      govt.markets.arbitrage();
+    t = phase(3, t);
 
     totalSupply = 0;
     for (Company c : companies)
@@ -213,6 +268,7 @@ public class SimulationEngine extends Observable
     {
       bank.evaluate(Base.step, false);
     }
+    t = phase(4, t);
 
 
     // Collect Market information for reporting
@@ -293,8 +349,14 @@ public class SimulationEngine extends Observable
     // todo: add loan defaults
 
 
+    t = phase(5, t);
+
     Base.step += 1;
     Statistic.rolloverAll();
+    phase(6, t);
+
+    if (metrics != null)
+      metrics.publish(this);
 
     // Development support - check for agents not being removed from 
     // simulation properly
@@ -311,6 +373,25 @@ public class SimulationEngine extends Observable
     //auditWorkers();
   }
 
+  // Add time since start to phase, and return the time now
+  private long phase(int i, long start)
+  {
+    long now = System.nanoTime();
+
+    phaseNanos[i] += now - start;
+    return now;
+  }
+
+  /**
+   * Return total time spent in each of PHASES.
+   *
+   * @return nanoseconds, by phase
+   */
+  public long[] getPhaseNanos()
+  {
+    return phaseNanos.clone();
+  }
+
   /**
    * Load a simulation from a configuration file.
    *
@@ -326,12 +407,33 @@ public class SimulationEngine extends Observable
 
     try
     {
-      Gson gson = new Gson();
-      BufferedReader br = new BufferedReader(new FileReader(file));
-      JsonObject json = gson.fromJson(br, JsonObject.class);
+      JsonObject json = readConfig(file);
 
       // Get description for entire simulation
       description = json.getAsJsonPrimitive("description").getAsString();
+      configFile = file.getName();
+
+      // Derived statistics: [{"name": , "group": , "expression": }, ...]
+      if (json.has("derived"))
+      {
+        for (JsonElement e : json.getAsJsonArray("derived"))
+        {
+          JsonObject d = e.getAsJsonObject();
+
+          try
+          {
+            DerivedStatistic.define(d.get("name").getAsString(),
+                                    d.has("group") ? d.get("group").getAsString()
+                                                   : "derived",
+                                    d.get("expression").getAsString());
+          }
+          catch (IllegalArgumentException ex)
+          {
+            System.err.println("Derived statistic " + d.get("name") + ": "
+                               + ex.getMessage());
+          }
+        }
+      }
 
       // Read individual agents from array
       JsonArray agents = json.getAsJsonArray("GsonAgent");
@@ -364,7 +466,8 @@ public class SimulationEngine extends Observable
         // as it becomes a dependency for later agents.
 
         //System.out.println("validating " + ((Agent)agent).name);
-        if (Govt.class.isAssignableFrom(agent.getClass()))
+        if (Govt.class.isAssignableFrom(agent.getClass())
+            && !(agent instanceof Region))
         {
           govt = (Govt) agent;
           initGovt(govt);
@@ -400,6 +503,52 @@ public class SimulationEngine extends Observable
     return true;
   }
 
+  /*
+   * Parsed config files, so that repeatedly loading the same file (e.g.
+   * when resetting between training episodes) doesn't re-read and re-parse
+   * it. Agents are still created afresh from the cached json on each load.
+   */
+
+  private static final HashMap<String, CachedConfig> configCache = new HashMap<>();
+
+  private static class CachedConfig
+  {
+    final long       modified;
+    final JsonObject json;
+
+    CachedConfig(long modified, JsonObject json)
+    {
+      this.modified = modified;
+      this.json = json;
+    }
+  }
+
+  /**
+   * Return parsed json for config file, from the cache unless the file has
+   * changed since it was read.
+   *
+   * @param file Config file
+   * @return parsed json
+   * @throws IOException if the file can't be read
+   */
+
+  private static JsonObject readConfig(File file) throws IOException
+  {
+    String       key      = file.getCanonicalPath();
+    long         modified = file.lastModified();
+    CachedConfig cached   = configCache.get(key);
+
+    if (cached == null || cached.modified != modified)
+    {
+      try (BufferedReader br = new BufferedReader(new FileReader(file)))
+      {
+        cached = new CachedConfig(modified, new Gson().fromJson(br, JsonObject.class));
+      }
+      configCache.put(key, cached);
+    }
+    return cached.json;
+  }
+
   /**
    * Initialise government for simulation loading from config. (Cross-check
    * with createGovt which is used for new simulations.)
@@ -453,13 +602,9 @@ public class SimulationEngine extends Observable
       }
       else if (a instanceof Market)
       {
-		// At the moment there is a restriction on one commodity 
-		// market/govt/region
-		if(govt.markets.getMarket(((Market)a).product) == null)
-           govt.markets.addMarket((Market) a);
-		else
-		   System.out.println("Warning: duplicate market detected " + 
-				              ((Market)a).product);
+		// One commodity market per product in each region shard (and
+		// in the country as a whole). Duplicates are reported by markets.
+        govt.markets.addMarket((Market) a);
       }
       else if ((a instanceof Company) && (!(a instanceof Bank)))
       {
@@ -588,6 +733,71 @@ public class SimulationEngine extends Observable
     return name;
   }
 
+  /**
+   * Add agent by class name, as for the CLI addagent command. Internal
+   * agents are in core/, all other agents should be in agents/.
+   *
+   * @param type       Class name of agent
+   * @param bankname   Name of agent's bank (not used for banks)
+   * @param properties Properties for agent
+   * @return Added agent, or null if it couldn't be added
+   */
+
+  public Object addAgent(String type, String bankname, Map<String, String> properties)
+  {
+    Class<?> agentType;
+
+    try
+    {
+      agentType = Class.forName("core." + type);
+      if (!Agent.class.isAssignableFrom(agentType))
+      {
+        throw new ClassNotFoundException(agentType + " does not extend Agent");
+      }
+    }
+    catch (ClassNotFoundException e2)
+    {
+      try
+      {
+        agentType = Class.forName("agents." + type);
+
+        if (!Agent.class.isAssignableFrom(agentType))
+        {
+          throw new ClassNotFoundException(agentType + 
+                                           " does not extend Agent");
+        }
+      }
+      catch (ClassNotFoundException e4)
+      {
+         System.err.println("Failed to find agent class: " + type);
+         System.err.println(e4);
+         return null;
+      }
+    }
+
+    if (agentType == Bank.class) 
+      return addEntity(agentType, properties, null, properties.get("name"));
+
+    if (govt.getBank(bankname) == null)
+    {
+       System.out.println("Error: bank not found");
+       return null;
+    }
+
+    try
+    {
+       return addEntity(agentType, properties, govt.getBank(bankname),
+                        properties.get("name"));
+    }
+    catch (Exception e)
+    {
+       System.out.println("Failed to add agent");
+       System.out.println(e);
+       e.printStackTrace();
+       return null;
+    }
+  }
+
   /**
    * Add an entity to the simulation. Entity will be created under simulation
    * government, and with an account at the default Bank.
@@ -732,8 +942,7 @@ public class SimulationEngine extends Observable
     if (o instanceof Company || (o instanceof Bank))
     {
       Company c = ((Company) o);
-      c.setMarkets(govt.markets);
-      c.setMarket(govt.markets.getMarket(c.product));
+      c.setMarkets(govt.markets.getShard(c.region));
       
       govt.addCompany(c);       //added by Anton
 
@@ -0,0 +1,344 @@
+/* Program  : Threadneedle
+ *
+ * SimulationEnvironment : Reset/step interface for training Python
+ *                         investors over many episodes in one JVM.
+ *
+ * Date     : October 2026
+ *
+ * Comments : reset(seed, config) rebuilds the simulation in process from
+ *            a json config, or from a batch file using the load, addagent
+ *            and repeat commands (a step command sets the episode length,
+ *            other commands are ignored). Config files and batch scripts
+ *            are parsed once and cached.
+ *
+ *            step(actions) takes one action code per PythonStockInvestor
+ *            (see PythonStockInvestor.ACTIONS), evaluates one simulation
+ *            step, and returns the new states, each investor's change in
+ *            net worth as its reward, and whether the episode is done -
+ *            because an investor's bank has become a zombie, or the
+ *            episode length has been reached.
+ *
+ *            States use the same layout as the batched Python calls:
+ *            STATE_LONGS big endian longs per investor. Rewards are one
+ *            big endian long per investor.
+ *
+ *            getFeatures() returns richer observations (see
+ *            ObservationBuilder), as big endian doubles per investor.
+ *
+ *            main() starts a py4j gateway with an environment as its
+ *            entry point.
+ */
+package core;
+
+import base.Base;
+import py4j.GatewayServer;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.util.*;
+
+public class SimulationEnvironment
+{
+  /**
+   * Result of a step.
+   */
+  public static class Result
+  {
+    private final byte[]  observations;
+    private final byte[]  rewards;
+    private final boolean done;
+
+    Result(byte[] observations, byte[] rewards, boolean done)
+    {
+      this.observations = observations;
+      this.rewards = rewards;
+      this.done = done;
+    }
+
+    public byte[] getObservations()
+    {
+      return observations;
+    }
+
+    public byte[] getRewards()
+    {
+      return rewards;
+    }
+
+    public boolean isDone()
+    {
+      return done;
+    }
+  }
+
+  // Parsed batch scripts, by canonical path
+  private static final HashMap<String, Script> scripts = new HashMap<>();
+
+  private static class Script
+  {
+    final long           modified;
+    final List<String[]> commands = new ArrayList<>();
+    int                  steps    = 0;      // Episode length, 0 = unlimited
+
+    Script(long modified)
+    {
+      this.modified = modified;
+    }
+  }
+
+  private SimulationEngine simeng = null;
+  private int              episodeSteps = 0;
+  private int              steps        = 0;
+  private long[]           worth        = new long[0];
+
+  /**
+   * Start a new episode.
+   *
+   * @param seed   Seed for simulation's random number generator
+   * @param config json config or batch file
+   * @return initial states of python investors
+   */
+  public byte[] reset(int seed, String config)
+  {
+    PythonStockInvestor.setExternal(true);
+
+    if (simeng == null)
+      simeng = new SimulationEngine();
+    else if (simeng.govt != null)
+      simeng.resetAll();
+
+    Base.setRandom(seed);
+
+    Script script = getScript(new File(config));
+
+    for (String[] command : script.commands)
+      execute(command);
+
+    episodeSteps = script.steps;
+    steps = 0;
+
+    ArrayList<PythonStockInvestor> investors = PythonStockInvestor.active();
+
+    worth = new long[investors.size()];
+    for (int i = 0; i < worth.length; i++)
+      worth[i] = investors.get(i).netWorth();
+
+    return states(investors);
+  }
+
+  /**
+   * Carry out one step of the simulation.
+   *
+   * @param actions one action code per investor, in the order of the states
+   * @return new states, rewards and done
+   */
+  public Result step(byte[] actions)
+  {
+    if (simeng == null)
+      throw new IllegalStateException("reset() must be called before step()");
+
+    int[] codes = new int[actions.length];
+    for (int i = 0; i < actions.length; i++)
+      codes[i] = actions[i];
+
+    PythonStockInvestor.setActions(Base.step, codes);
+    simeng.evaluate();
+    steps++;
+
+    ArrayList<PythonStockInvestor> investors = PythonStockInvestor.active();
+    ByteBuffer rewards = ByteBuffer.allocate(investors.size() * Long.BYTES);
+
+    if (worth.length != investors.size())
+      worth = Arrays.copyOf(worth, investors.size());
+
+    for (int i = 0; i < investors.size(); i++)
+    {
+      long w = investors.get(i).netWorth();
+
+      rewards.putLong(w - worth[i]);
+      worth[i] = w;
+    }
+
+    boolean done = PythonStockInvestor.hasFailed()
+                   || (episodeSteps > 0 && steps >= episodeSteps);
+
+    return new Result(states(investors), rewards.array(), done);
+  }
+
+  /**
+   * Return the names of the python investors, comma separated, in the order
+   * of states and actions.
+   *
+   * @return agent names
+   */
+  public String getAgentIds()
+  {
+    StringBuilder ids = new StringBuilder();
+
+    for (PythonStockInvestor p : PythonStockInvestor.active())
+    {
+      if (ids.length() > 0) ids.append(',');
+      ids.append(p.name);
+    }
+    return ids.toString();
+  }
+
+  /**
+   * Return the full observations of the python investors, in the order of
+   * states.
+   *
+   * @return getFeatureNames().length big endian doubles per investor
+   */
+  public byte[] getFeatures()
+  {
+    ArrayList<PythonStockInvestor> investors = PythonStockInvestor.active();
+    ObservationBuilder             builder   = PythonStockInvestor.observations;
+
+    double[]   obs      = new double[builder.size()];
+    ByteBuffer features = ByteBuffer.allocate(investors.size() * obs.length * Double.BYTES);
+
+    for (PythonStockInvestor p : investors)
+    {
+      builder.observe(p, p.stockMarket, obs, 0);
+      for (double d : obs)
+        features.putDouble(d);
+    }
+    return features.array();
+  }
+
+  /**
+   * Return the names of the values in getFeatures(), comma separated.
+   *
+   * @return feature names
+   */
+  public String getFeatureNames()
+  {
+    return String.join(",", PythonStockInvestor.observations.getFeatureNames());
+  }
+
+  public SimulationEngine getSimulationEngine()
+  {
+    return simeng;
+  }
+
+  private static byte[] states(List<PythonStockInvestor> investors)
+  {
+    ByteBuffer states = ByteBuffer.allocate(investors.size()
+                                            * PythonStockInvestor.STATE_LONGS
+                                            * Long.BYTES);
+
+    for (PythonStockInvestor p : investors)
+    {
+      PythonStockInvestor.State s = p.getState();
+
+      states.putLong(s.deposit).putLong(s.debt).putLong(s.shareHolding)
+            .putLong(s.bidPrice).putLong(s.askPrice).putLong(s.isZombie ? 1 : 0);
+    }
+    return states.array();
+  }
+
+  private void execute(String[] command)
+  {
+    switch (command[0])
+    {
+      case "load":
+        if (!simeng.loadSimulation(new File(command[1])))
+          throw new RuntimeException("Failed to load simulation from file: "
+                                     + command[1]);
+        break;
+
+      case "addagent":
+        Map<String, String> properties = new HashMap<>();
+
+        for (int i = 2; i < command.length; ++i)
+        {
+          String[] property = command[i].split("=", 2);
+
+          if (property.length == 2)
+            properties.put(property[0], property[1]);
+        }
+
+        if (simeng.addAgent(command[1], command.length > 2 ? command[2] : null,
+                            properties) == null)
+          throw new RuntimeException("Failed to add agent: "
+                                     + String.join(" ", command));
+        break;
+
+      case "repeat":
+        String[] repeated = Arrays.copyOfRange(command, 2, command.length);
+
+        for (int i = Integer.parseInt(command[1]); i > 0; i--)
+          execute(repeated);
+        break;
+
+      default:
+        break;
+    }
+  }
+
+  /**
+   * Return the parsed commands for a config. A json config is treated as a
+   * script with a single load command.
+   *
+   * @param file config or batch file
+   * @return script
+   */
+  private static Script getScript(File file)
+  {
+    try
+    {
+      String key    = file.getCanonicalPath();
+      Script script = scripts.get(key);
+
+      if (script != null && script.modified == file.lastModified())
+        return script;
+
+      script = new Script(file.lastModified());
+
+      if (file.getName().endsWith(".json"))
+      {
+        script.commands.add(new String[] {"load", file.getPath()});
+      }
+      else
+      {
+        try (BufferedReader br = new BufferedReader(new FileReader(file)))
+        {
+          String line;
+
+          while ((line = br.readLine()) != null)
+          {
+            String[] fields = line.trim().split("\\s+");
+
+            if (fields[0].isEmpty() || fields[0].startsWith("#"))
+              continue;
+
+            if (fields[0].equals("step") && fields.length > 1)
+              script.steps += Integer.parseInt(fields[1]);
+            else
+              script.commands.add(fields);
+          }
+        }
+      }
+
+      scripts.put(key, script);
+      return script;
+    }
+    catch (IOException e)
+    {
+      throw new RuntimeException("Failed to read config " + file + ": " + e);
+    }
+  }
+
+  /**
+   * Run an environment as the entry point of a py4j gateway.
+   *
+   * @param args unused
+   */
+  public static void main(String[] args)
+  {
+    GatewayServer server = new GatewayServer(new SimulationEnvironment());
+
+    server.start();
+    System.out.println("Simulation environment gateway started");
+  }
+}
@@ -3,6 +3,11 @@
  *
  * Author        : Throstur Thorarensen
  * Date          : February 2015
+ *
+ * Each listed market has a Constituent entry holding its last traded, ask
+ * and bid prices and shares outstanding. Markets update their entry when
+ * they trade or their quotes change, and the exchange keeps running
+ * totals, so that the index levels don't require visiting every market.
  */
 
 
@@ -18,30 +23,47 @@ public class StockExchange extends Company
 
   public static StockExchange findExchange(String name, Govt govt)
   {
-    for (StockExchange se : govt.getStockExchanges())
-    {
-      if (se.name.equals(name))
-        return se;
-    }
-    return null;
+    return govt.getStockExchange(name);
   }
 
   public static StockMarket findMarket(String name, Govt govt) {
-    for (StockExchange se : govt.getStockExchanges()) {
-      for (StockMarket m : se.markets) {
-        if (m.name.equals(name)) {
-          return m;
-        }
-      }
+    return govt.getStockMarket(name);
+  }
+
+  // Listing of a single market on the exchange
+  public static class Constituent
+  {
+    public final StockMarket market;
+    long last;                         // Last traded price
+    long ask;                          // Lowest ask (last known)
+    long bid;                          // Highest bid, 0 if none
+    long shares;                       // Shares outstanding
+
+    Constituent(StockMarket market)
+    {
+      this.market = market;
     }
-    return null;
+
+    public long getLast()   { return last; }
+    public long getAsk()    { return ask; }
+    public long getBid()    { return bid; }
+    public long getShares() { return shares; }
   }
 
+  private HashMap<String, Constituent> constituents = new HashMap<>();
+
+  // Running totals over constituents
+  private long totalLast = 0;
+  private long totalAsk  = 0;
+  private long totalBid  = 0;
+  private long totalCap  = 0;          // Sum of last price * shares
+
   public Statistic s_index;
   public boolean verbose = false;
   public Statistic s_aindex;
   public Statistic s_bindex;
-  public List<StockMarket> markets = new LinkedList<>();
+  public List<StockMarket> markets = new ArrayList<>();   // By name, unless
+  private boolean          shuffled = false;              // shuffled this step
   public List<Agent> seats = new LinkedList<>();
   public int numSeats;
 
@@ -92,11 +114,71 @@ public class StockExchange extends Company
 
   public void addStockMarket(StockMarket market)
   {
-    if (!markets.contains(market))
-      markets.add(market);
+    if (!constituents.containsKey(market.name))
+    {
+      if (shuffled)
+        markets.add(market);             // Order restored by evaluate()
+      else
+        markets.add(insertionPoint(market.name), market);
+      constituents.put(market.name, new Constituent(market));
+      govt.registerStockMarket(market);
+      update(market);
+    }
     else throw new RuntimeException("StockMarket already on StockExchange!");
   }
 
+  /**
+   * Update a market's entry in the index, called by the market when it
+   * trades or its quotes change.
+   *
+   * @param market Listed market
+   */
+  void update(StockMarket market)
+  {
+    Constituent c = constituents.get(market.name);
+
+    if (c == null || c.market != market)
+      return;
+
+    long last   = market.lastPrice;
+    long bid    = market.getBidPrice();
+    long shares = (market.capTable == null) ? 0 : market.capTable.getTotal();
+
+    market.getAskPrice();              // refreshes last known ask
+    long ask    = market.sellPrice;
+
+    totalLast += last - c.last;
+    totalAsk  += ask - c.ask;
+    totalBid  += bid - c.bid;
+    totalCap  += last * shares - c.last * c.shares;
+
+    c.last   = last;
+    c.ask    = ask;
+    c.bid    = bid;
+    c.shares = shares;
+  }
+
+  /**
+   * Return listing for market.
+   *
+   * @param name Name of market
+   * @return Constituent or null if not listed
+   */
+  public Constituent getConstituent(String name)
+  {
+    return constituents.get(name);
+  }
+
+  /**
+   * Return total market capitalisation, at last traded prices.
+   *
+   * @return capitalisation
+   */
+  public long getCapitalisation()
+  {
+    return totalCap;
+  }
+
   public StockMarket getRandom()
   {
     int chosen = Base.random.nextInt(markets.size());
@@ -106,6 +188,7 @@ public class StockExchange extends Company
 
   public StockMarket getFirstOrRandom(Set<StockMarket> exclusions) {
     Collections.shuffle(markets);
+    shuffled = true;
     for (StockMarket m : markets) {
       if (exclusions.contains(m)) continue;
       return m;
@@ -115,17 +198,17 @@ public class StockExchange extends Company
 
   @Override
   public void evaluate(boolean report, int step) {
-    long index = 0;
-    long bindex = 0;
-    long aindex = 0;
-//    Base.DEBUG("STOCK EXCHANGE " + name);
-    Collections.sort(markets, (o1, o2) -> o1.name.compareToIgnoreCase(o2.name));
-    for (StockMarket m : markets) {
-      index += m.lastPrice;
-      aindex += m.sellPrice;
-      bindex += m.getBidPrice();
-//      Base.DEBUG(m.name + ": [" + m.numBids() + "@" + m.bidPrice + "/" + m.numAsks() + "@" + m.sellPrice + "]");
+    long index = totalLast;
+    long bindex = totalBid;
+    long aindex = totalAsk;
+
+    // Markets are kept in name order, so that random choices are the
+    // same for the same seed
+    if (shuffled) {
+      markets.sort((o1, o2) -> o1.name.compareToIgnoreCase(o2.name));
+      shuffled = false;
     }
+
     if (markets.size() > 0) // avoid division by 0 error
     {
       index /= markets.size();
@@ -141,6 +224,26 @@ public class StockExchange extends Company
     }
   }
 
+  /*
+   * Return index after any markets whose name sorts before or equal to
+   * name, so that insertion keeps markets in name order.
+   */
+  private int insertionPoint(String name)
+  {
+    int lo = 0, hi = markets.size();
+
+    while (lo < hi)
+    {
+      int mid = (lo + hi) >>> 1;
+
+      if (markets.get(mid).name.compareToIgnoreCase(name) <= 0)
+        lo = mid + 1;
+      else
+        hi = mid;
+    }
+    return lo;
+  }
+
   public void releaseSeat(Agent sitter) {
     if (hasSeat(sitter)) {
       seats.remove(sitter);
@@ -181,15 +181,14 @@ public class StockInvestor extends Person
   }
 
   public void sellShares() {
-    TreeSet<Order> orders = getOrders(OrderType.ASK);
-    if (orders.size() == 0) {
+    if (stockMarket.numOrders(employer, OrderType.ASK) == 0) {
       sellShares(1, 0, 12);
       return;
     }
     long volume = 1; // sell 1 more
     long duration = 3; // 3 is minimum
     long maxPrice = Long.MAX_VALUE; // find the lowest price, which becomes the upper limit on our ask
-    for (Order o : orders) {
+    for (Order o : getOrders(OrderType.ASK)) {
       volume += o.volume;
       long tl = o.getTimeLeft();
       if (duration < tl) {
@@ -254,16 +253,11 @@ public class StockInvestor extends Person
   {
     if (orders == null)
     { // cancel all orders
-      // cancel all asks
-      getOrders(OrderType.ASK).forEach(stockMarket::cancelOrder);
-
-      // cancel all bids
-      getOrders(OrderType.BID).forEach(stockMarket::cancelOrder);
-
+      stockMarket.cancelOrders(employer, null);
     } 
 	else {
-      getOrders(OrderType.ASK).stream().filter(orders::contains).forEach(stockMarket::cancelOrder);
-      getOrders(OrderType.BID).stream().filter(orders::contains).forEach(stockMarket::cancelOrder);
+      // only our own orders can be cancelled
+      orders.stream().filter(o -> o.agent == employer).forEach(stockMarket::cancelOrder);
     }
 
   }
@@ -312,15 +306,9 @@ public class StockInvestor extends Person
   }
 
   public void recordSale(long price, long volume) {
-    // TODO: Refactor maybe (profile first)
-    for (int i = 0; i < volume; i++) {
-      strategy.recordSale(price);
-    }
+    strategy.recordSale(price, volume);
   }
   public void recordPurchase(long price, long volume) {
-    // TODO: Refactor maybe (profile first)
-    for (int i = 0; i < volume; i++) {
-      strategy.recordPurchase(price);
-    }
+    strategy.recordPurchase(price, volume);
   }
 }
@@ -9,9 +9,11 @@ package core;
 import base.Base;
 import statistics.Statistic;
 
+import java.io.File;
+import java.io.IOException;
 import java.util.*;
 
-public class StockMarket extends Company {
+public class StockMarket extends Company implements Account.DepositWatcher {
   /// BEGIN INTERNAL CLASSES
 
   // enhanced readability with enum
@@ -42,27 +44,38 @@ public class StockMarket extends Company {
     }
   }
 
-  // Order to be matched with other orders, comparable implemented for TreeSet
+  // Order to be matched with other orders, comparable implemented for TreeSet.
+  // Orders are ordered by price, and then by id (time of placement).
   public class Order implements Comparable<Order>
   {
-    private OrderType type;
+    OrderType type;
 
     public long getPrice() {
       return price;
     }
 
-    private long price;
+    public long getId() {
+      return id;
+    }
+
+    final long id;
+    long price;
     public long volume;
-    private long timeLeft;
-    private Agent agent;
+    long expires;           // Step (market clock) order expires at, -1 never
+    Agent agent;
+
+    // Position in the order book (maintained by OrderBook)
+    OrderBook.PriceLevel level;
+    Order prev, next;
 
     public Order(OrderType type, long price, long volume, Agent agent)
     {
+      this.id = book.assignId();
       this.type = type;
       this.price = price;
       this.volume = volume;
       this.agent = agent;
-      this.timeLeft = 12;
+      this.expires = clock + 12;
       if (volume <= 0) {
         throw new RuntimeException(agent + " attempted to place an order with " + volume + " volume.");
       }
@@ -74,7 +87,7 @@ public class StockMarket extends Company {
     public Order(OrderType type, long price, long volume, Agent agent, long period)
     {
       this(type, price, volume, agent);
-      this.timeLeft = period;
+      this.expires = (period > 0) ? clock + period : -1;
     }
 
     public long decreaseOrder(long amount)
@@ -90,21 +103,12 @@ public class StockMarket extends Company {
     }
 
     /**
-     * decreases timeLeft by 1
+     * Return no. of steps until the order expires.
      *
-     * @return the new value of timeLeft
+     * @return steps left, or -1 if order doesn't expire
      */
-    public long elapseTime()
-    {
-      if (timeLeft == -1)
-      {
-        return -1;
-      }
-      return --timeLeft;
-    }
-
     public long getTimeLeft() {
-      return timeLeft;
+      return (expires == -1) ? -1 : expires - clock;
     }
 
     /**
@@ -155,15 +159,11 @@ public class StockMarket extends Company {
 
     public int compareTo(Order o)
     {
-      int value = 0;
+      int value = Long.compare(this.price, o.price);
 
-      if (this.price > o.price)
-      {
-        value = 1;
-      }
-      else if (this.price < o.price)
+      if (value == 0)
       {
-        value = -1;
+        value = Long.compare(this.id, o.id);
       }
 
       return value;
@@ -171,18 +171,35 @@ public class StockMarket extends Company {
 
     @Override
     public String toString() {
-      return type.toString() + "@" + Long.toString(price) + "x" + Long.toString(volume) + " [" + agent.name + "] time left: " + timeLeft;
+      return type.toString() + "@" + Long.toString(price) + "x" + Long.toString(volume) + " [" + agent.name + "] time left: " + getTimeLeft();
     }
   }
 
   /// END INTERNAL CLASSES
 
-  private NavigableSet<Order> bids, asks;
+  private OrderBook book;
   private StockExchange stockExchange;
   protected long bidPrice; // highest bid order (last known)
   protected long sellPrice; // lowest sell order (last known)
   protected long lastPrice; // last price traded at
 
+  private long clock = 0;   // No. of steps evaluated, used for order expiry
+
+  // If set, orders are funded when placed: bid payments and ask shares are
+  // held by the market until the order is filled or withdrawn. Payments
+  // are held in a separate escrow account, and escrowed shares, although
+  // registered to the market, are counted separately from its own.
+  public boolean escrow = false;
+
+  private Account escrowAccount = null;
+  private long    escrowShares  = 0;
+
+  public MarketData feed;   // Trades, and per step bars with book depth
+
+  // Owners whose deposit fell during matching, bids checked once it's done
+  private LinkedHashSet<Agent> pendingLiquidity = new LinkedHashSet<>();
+  private boolean matching = false;
+
   public Statistic s_sellprice;
   public Statistic s_bidprice;
   public Statistic s_tradeprice;
@@ -211,6 +228,30 @@ public class StockMarket extends Company {
     String exchange = properties.get("exchange");
     String ipo = properties.get("ipo");
 
+    if (properties.get("escrow") != null)
+    {
+      this.escrow = Boolean.parseBoolean(properties.get("escrow"));
+    }
+
+    if (properties.get("depth") != null)
+    {
+      feed = new MarketData(this, MarketData.TRADES, MarketData.BARS,
+                            Integer.parseInt(properties.get("depth")));
+    }
+
+    if (properties.get("feed") != null)
+    {
+      try
+      {
+        feed.open(new File(properties.get("feed")));
+      }
+      catch (IOException e)
+      {
+        System.err.println("Failed to open market data file for " + name
+                           + ": " + e);
+      }
+    }
+
     if (nn != null)
     {
       this.name = nn;
@@ -234,8 +275,7 @@ public class StockMarket extends Company {
   }
 
   private void introduce(long volume) {
-    Shares s = new Shares(name, volume, 1L, this, this.sharesIssued);
-    this.addInvestment(s);
+    issueShares(1L, (int) volume);
     this.placeOrder(OrderType.ASK, 1L, volume, this, -1);
   }
 
@@ -247,8 +287,8 @@ public class StockMarket extends Company {
     bidPrice    = 0;
     sellPrice   = 0;
     this.offeredSalary = 0;
-    bids = Collections.synchronizedNavigableSet(new TreeSet<>());
-    asks = Collections.synchronizedNavigableSet(new TreeSet<>());
+    book = new OrderBook();
+    feed = new MarketData(this);
   }
 
   public void initStatistics()
@@ -278,55 +318,55 @@ public class StockMarket extends Company {
     }
 
     long price = 0;
+    long bestBid = book.bestPrice(OrderType.BID);
+    long bestAsk = book.bestPrice(OrderType.ASK);
 
     if (type == OrderType.ASK)
     {
-      if (!asks.isEmpty())
+      if (bestAsk != -1)
       {
-        price = asks.first().price - 1;
+        price = bestAsk - 1;
         // Don't sell for free
         if (price <= 0) price = 1;
 
-        if (!bids.isEmpty())
+        if (bestBid != -1)
         {
-          if (price < bids.last().price)
+          if (price < bestBid)
           {
-            price = bids.last().price;
+            price = bestBid;
           }
-          else if (price > bids.last().price * 2)
+          else if (price > bestBid * 2)
           {
-            price = Math.max((long) (bids.last().price * 1.5), asks.first().price / 3);
+            price = Math.max((long) (bestBid * 1.5), bestAsk / 3);
           }
         }
       } else {
-        if (bids.isEmpty()) {
+        if (bestBid == -1) {
           price = Math.max(sellPrice, 1);
         } else {
-          price = (long) Math.max(sellPrice, (bids.last().price * 1.5 + 1L)); // try and sell for more than buy value
+          price = (long) Math.max(sellPrice, (bestBid * 1.5 + 1L)); // try and sell for more than buy value
         }
       }
     }
     else if (type == OrderType.BID)
     {
-      if (!bids.isEmpty())
+      if (bestBid != -1)
       {
-        price = bids.last().price + 1; // no roof here
-        // about to use `asks', so remove invalid entries.
-        asks.removeIf(x -> x.timeLeft == 0 || x.volume == 0);
-        if (!asks.isEmpty()) {
-          if (price > asks.first().price) {
-            long vol = Math.min(asks.first().volume, volume);
+        price = bestBid + 1; // no roof here
+        if (bestAsk != -1) {
+          if (price > bestAsk) {
+            long vol = Math.min(book.best(OrderType.ASK).volume, volume);
             long remaining = volume - vol;
-            boolean val = placeOrder(type, asks.first().price, vol, agent, duration);
+            boolean val = placeOrder(type, bestAsk, vol, agent, duration);
             if (remaining == 0)
               return val;
             return placeOrder(type, remaining, agent, duration);
           }
         }
       }
-      else if (!asks.isEmpty())
+      else if (bestAsk != -1)
       {
-        price = Math.max(1, asks.first().price / 7); // to avoid setting an order we can't expect to be filled
+        price = Math.max(1, bestAsk / 7); // to avoid setting an order we can't expect to be filled
         price = Math.max(bidPrice, price);
         price = Math.min(sellPrice, price);
         // TODO: revise the above (more)
@@ -370,41 +410,36 @@ public class StockMarket extends Company {
     */
     if (type == OrderType.ASK) {
       // check if agent owns what he's selling
-      Inventory inv = agent.shareholdings.get(name);
-
-      if (inv == null)
+      if (available(agent) < volume)
       {
         return false;
       }
-      else
-      {
-        Iterator<Widget> it = inv.getIterator();
-        long found = 0;
-        while (it.hasNext())
-        {
-          found += it.next().quantity();
-        }
-        if (found < volume)
-        {
-          return false;
-        }
-      }
-
     }
 
-    Order ord = new Order(type, price, volume, agent, duration);
-    if (type == OrderType.ASK) {
-      asks.add(ord);
-    }
-    else if (type == OrderType.BID)
+    if (escrow && !reserve(type, price, volume, agent))
     {
-      bids.add(ord);
+      return false;
     }
 
+    Order ord = new Order(type, price, volume, agent, duration);
+    book.add(ord);
+
 //    Base.DEBUG("New " + type.toString() + " order from " + agent.name + ": " + volume + "x " + name + "@" + price);
 
-    // check if the order matches (by matching all orders)
-    matchOrders();
+    // The rest of the book is already matched, so only a new order that
+    // crosses the spread can trade.
+    if (book.crosses(ord))
+      matchOrder(ord);
+
+    // Bids are revalidated when the bidder's deposit falls, which requires
+    // watching the account. Escrowed bids are already paid for.
+    if (!escrow && type == OrderType.BID && book.contains(ord))
+    {
+      agent.getAccount().addWatcher(this);
+      revalidate(agent);
+    }
+
+    quoteChanged();
 
     return true;
   }
@@ -445,16 +480,210 @@ public class StockMarket extends Company {
       return false;
     }
 
-    // record the sale (for each traded share)
-    for (int i = 0 ; i < quantity; ++i)
+    // record the sale (weighted by no. of shares traded)
+    s_avgprice.add(price, quantity);
+
+    return true;
+  }
+
+  /**
+   * Return no. of shares an agent can offer. The market's own holding
+   * also contains the shares escrowed for other agents' asks.
+   *
+   * @param agent Agent
+   * @return shares available
+   */
+  private long available(Agent agent)
+  {
+    if (agent == this)
+      return getShareholding(name) - escrowShares;
+
+    return agent.getShareholding(name);
+  }
+
+  /**
+   * Return account holding payments for bids in escrow, opening it with
+   * the market's bank the first time.
+   *
+   * @return escrow account
+   */
+  private Account getEscrowAccount()
+  {
+    if (escrowAccount == null)
+    {
+      escrowAccount = getBank().createDepositAccount(this);
+      addAccount(escrowAccount);
+    }
+    return escrowAccount;
+  }
+
+  /**
+   * Return funds held in escrow for bids.
+   *
+   * @return amount held
+   */
+  public long getEscrowFunds()
+  {
+    return escrowAccount == null ? 0 : escrowAccount.getDeposit();
+  }
+
+  /**
+   * Return no. of shares held in escrow for asks.
+   *
+   * @return shares held
+   */
+  public long getEscrowShares()
+  {
+    return escrowShares;
+  }
+
+  /**
+   * Escrow: take payment for a bid into the escrow account, or the shares
+   * for an ask, until the order is filled or withdrawn.
+   *
+   * @param type   Type of order
+   * @param price  Order price
+   * @param volume Order volume
+   * @param agent  Owner of order
+   * @return t/f reserved, fails if agent doesn't have the funds/shares
+   */
+  private boolean reserve(OrderType type, long price, long volume, Agent agent)
+  {
+    if (agent == this)
+      return true;
+
+    if (type == OrderType.BID)
+    {
+      return agent.getDeposit() >= price * volume
+             && agent.getAccount().transfer(getEscrowAccount(), price * volume,
+                                            "Escrow: bid '" + name + "'x"
+                                            + volume + "@" + price);
+    }
+    else
+    {
+      if (agent.transferShares(name, volume, this) != volume)
+        return false;
+
+      escrowShares += volume;
+      return true;
+    }
+  }
+
+  /**
+   * Escrow: return the unfilled part of an order to its owner.
+   *
+   * @param o Order withdrawn from the book
+   */
+  private void release(Order o)
+  {
+    if (!escrow || o.agent == this || o.volume == 0)
+      return;
+
+    if (o.type == OrderType.BID)
+    {
+      pay(o.agent, o.price * o.volume,
+          "Escrow: refund '" + name + "'x" + o.volume + "@" + o.price);
+    }
+    else
     {
-      s_avgprice.add(price);
+      deliver(o.agent, o.volume);
     }
+  }
+
+  /*
+   * Escrow: pay out of the escrow account. The funds were reserved when the
+   * bid was placed, so failure means escrow is inconsistent.
+   */
+  private void pay(Agent to, long amount, String reason)
+  {
+    if (!getEscrowAccount().transfer(to.getAccount(), amount, reason))
+      throw new RuntimeException("Escrow: " + name + " failed to pay "
+                                 + amount + " to " + to.name);
+  }
+
+  /*
+   * Escrow: hand over escrowed shares.
+   */
+  private void deliver(Agent to, long volume)
+  {
+    if (volume > escrowShares || transferShares(name, volume, to) != volume)
+      throw new RuntimeException("Escrow: " + name + " failed to deliver "
+                                 + volume + " shares to " + to.name);
+
+    escrowShares -= volume;
+  }
+
+  /**
+   * Remove order from the book, returning anything held for it.
+   *
+   * @param o Order
+   * @return t/f order was in the book
+   */
+  private boolean withdraw(Order o)
+  {
+    if (!book.remove(o))
+      return false;
 
+    release(o);
+    quoteChanged();
     return true;
   }
 
-  public void orderTransaction(OrderMatch om)
+  /**
+   * Escrow: settle an order match from the funds and shares held by the
+   * market. The bid has already been paid for at its own price, so any
+   * difference from the trade price is refunded to the buyer.
+   *
+   * @param om Order match
+   */
+  private void settle(OrderMatch om)
+  {
+    long payment = om.price * om.volume;
+    long refund  = (om.bid.price - om.price) * om.volume;
+
+    // The market's own bids and asks aren't escrowed
+    if (om.buyer == this)
+    {
+      if (!getAccount().transfer(om.seller.getAccount(), payment,
+                                 "Shares: '" + name + "'x" + om.volume + "@"
+                                 + om.price))
+        throw new RuntimeException("Escrow: " + name + " can't pay for shares");
+    }
+    else
+    {
+      if (om.seller != this)
+        pay(om.seller, payment,
+            "Shares: '" + name + "'x" + om.volume + "@" + om.price);
+      else if (!getEscrowAccount().transfer(getAccount(), payment,
+                                            "Shares: '" + name + "'x"
+                                            + om.volume + "@" + om.price))
+        throw new RuntimeException("Escrow: " + name + " failed to pay "
+                                   + payment + " to itself");
+      if (refund > 0)
+        pay(om.buyer, refund,
+            "Escrow: refund '" + name + "'x" + om.volume + "@" + om.bid.price);
+    }
+
+    if (om.seller == this)
+    {
+      if (transferShares(name, om.volume, om.buyer) != om.volume)
+        throw new RuntimeException("Escrow: " + name + " can't deliver shares");
+    }
+    else
+      deliver(om.buyer, om.volume);
+
+    s_avgprice.add(om.price, om.volume);
+  }
+
+  /**
+   * Transact an order match. If the transfer fails, the order(s) which can
+   * no longer be filled are cancelled. With escrow the transaction can't
+   * fail.
+   *
+   * @param om Order match
+   * @return t/f transaction succeeded
+   */
+  public boolean orderTransaction(OrderMatch om)
   {
     if (om.volume == 0) {
       throw new RuntimeException("0 sized order can't be transacted!");
@@ -464,7 +693,7 @@ public class StockMarket extends Company {
     if (om.ask == null || om.bid == null)
     {
       Base.DEBUG("Transaction with expired order failed.");
-      return;
+      return false;
     }
 
     if (om.seller == null || om.buyer == null)
@@ -473,10 +702,15 @@ public class StockMarket extends Company {
       throw new RuntimeException("What the hell happened here! (buyer or seller null in orderTransaction)"); // probably dead code
     }
 
-    if (transferShares(name, om.volume, om.price, om.seller, om.buyer))
+    if (escrow)
+    {
+      settle(om);
+    }
+
+    if (escrow || transferShares(name, om.volume, om.price, om.seller, om.buyer))
     {
-      om.bid.decreaseOrder(om.volume);
-      om.ask.decreaseOrder(om.volume);
+      book.fill(om.bid, om.volume);
+      book.fill(om.ask, om.volume);
 
       // record the purchase
       if (om.buyer instanceof StockInvestor) {
@@ -486,6 +720,8 @@ public class StockMarket extends Company {
         ((StockInvestor) om.seller).recordSale(om.price, om.volume);
       }
       lastPrice = om.price;
+      feed.trade(Base.step, om.price, om.volume, om.buyer, om.seller);
+      return true;
     }
     else
     {
@@ -498,6 +734,7 @@ public class StockMarket extends Company {
       {
         cancelOrder(om.ask);
       }
+      return false;
     }
   }
 
@@ -509,131 +746,211 @@ public class StockMarket extends Company {
 
   protected void evaluate(boolean report, int step) 
   {
-    // make time pass for the orders, and remove if expired or empty
-    bids.removeIf(x -> x.elapseTime() == 0 || x.volume == 0);
-    asks.removeIf(x -> x.elapseTime() == 0 || x.volume == 0);
-
-    // naively try to match orders
-    matchOrders();
+    // make time pass for the orders, only orders expiring this step are
+    // touched. Bids which can no longer be paid for are removed when the
+    // bidder's deposit falls (see depositFell).
+    for (Order o : book.expire(++clock))
+      release(o);
+    quoteChanged();
 
     s_sellprice.add(Math.max(Math.max(0, getAskPrice()), sellPrice));
     s_bidprice.add(getBidPrice());
     s_tradeprice.add(lastPrice);
 
-	printOrders();
+    feed.bar(Base.step, lastPrice, book);
   }
 
-  private void matchOrders() {
-    // TODO: Remove from evaluate or from here... (code duplication)
-    bids.removeIf(x -> x.timeLeft == 0 || x.volume == 0);
-    asks.removeIf(x -> x.timeLeft == 0 || x.volume == 0);
-    // remove orders that can't be filled
-    bids.removeIf(Order::illiquid);
+  /**
+   * Match a newly placed order against the other side of the book, best
+   * price first and then in time order, for as long as it crosses the
+   * spread. Trades take place at the resting order's price.
+   *
+   * @param incoming Order that has just been placed
+   */
+  private void matchOrder(Order incoming)
+  {
+    OrderType opposite = (incoming.type == OrderType.BID) ? OrderType.ASK
+                                                          : OrderType.BID;
+
+    matching = true;
+
+    while (book.contains(incoming) && book.crosses(incoming))
+    {
+      Order resting = book.best(opposite);
+      long  volume  = Math.min(incoming.volume, resting.volume);
 
-    // remove invalid orders (like sell orders to non-existent shares)
-    bids.removeIf(x -> x.volume > x.agent.getShareholding(this.name) && x.type == OrderType.ASK);
+      Order bid = (incoming.type == OrderType.BID) ? incoming : resting;
+      Order ask = (incoming.type == OrderType.ASK) ? incoming : resting;
 
-    // avoid concurrent modification exception by taking a copy
-    NavigableSet<Order> cBids = new TreeSet<>();
-    NavigableSet<Order> cAsks = new TreeSet<>();
-    cBids.addAll(bids);
-    cAsks.addAll(asks);
+      OrderMatch om = new OrderMatch(resting.price, volume, bid.agent,
+                                     ask.agent, bid, ask);
 
-    Iterator<Order> itBid = cBids.descendingIterator();
-    Iterator<Order> itAsk = cAsks.iterator();
+      // A failed transaction cancels whichever orders can't be filled. If
+      // the resting order is still there (e.g. a trade with itself), the
+      // new order is withdrawn rather than leave the book crossed.
+      if (!orderTransaction(om) && book.contains(resting))
+        cancelOrder(incoming);
+    }
 
-    while (itBid.hasNext() && itAsk.hasNext()) {
-      Order bid = itBid.next();
-      Order ask = itAsk.next();
+    matching = false;
 
-      OrderMatch om = bid.tryMatch(ask);
-      if (om != null) {
-        orderTransaction(om);
-      } else {
-        break;
-      }
+    for (Agent a : pendingLiquidity)
+      revalidate(a);
+    pendingLiquidity.clear();
+  }
+
+  /**
+   * Deposit in the account of an agent with bids has fallen, remove any
+   * of its bids which can no longer be paid for. During matching this is
+   * deferred until the trade has been completed, as the order volume is
+   * only reduced after payment.
+   *
+   * @param account Account whose deposit has fallen
+   */
+  @Override
+  public void depositFell(Account account)
+  {
+    if (book.count(account.owner, OrderType.BID) == 0)
+      account.removeWatcher(this);
+    else if (matching)
+      pendingLiquidity.add(account.owner);
+    else
+      revalidate(account.owner);
+  }
+
+  /**
+   * Remove any of an agent's bids which it can no longer pay for.
+   *
+   * @param agent Owner of bids
+   */
+  private void revalidate(Agent agent)
+  {
+    boolean removed = false;
+
+    for (Order o : book.ordersBy(agent, OrderType.BID))
+    {
+      if (o.illiquid())
+        removed |= book.remove(o);
     }
+
+    if (removed && !matching)
+      quoteChanged();
+  }
+
+  /**
+   * Update this market's entry in its exchange's index.
+   */
+  private void quoteChanged()
+  {
+    if (stockExchange != null)
+      stockExchange.update(this);
   }
 
   public long numBids()
   {
-    return bids.size();
+    return book.size(OrderType.BID);
   }
 
   public long numAsks()
   {
-    return asks.size();
+    return book.size(OrderType.ASK);
   }
 
+  /**
+   * Return the live orders owned by an agent. Only the agent's own orders
+   * are visited.
+   *
+   * @param owner Owner of orders
+   * @param type  side of book, or null for both
+   * @return orders, ordered by price
+   */
   public TreeSet<Order> ordersBy(Agent owner, OrderType type)
   {
-    TreeSet<Order> orders = new TreeSet<>();
+    return new TreeSet<>(book.ordersBy(owner, type));
+  }
 
-    if (type == null || type == OrderType.ASK) {
-      orders.addAll(asks);
-    }
-    if (type == null || type == OrderType.BID) {
-      orders.addAll(bids);
-    }
+  /**
+   * Return no. of live orders owned by an agent.
+   *
+   * @param owner Owner of orders
+   * @param type  side of book, or null for both
+   * @return no. of orders
+   */
+  public int numOrders(Agent owner, OrderType type)
+  {
+    return book.count(owner, type);
+  }
 
-    orders.removeIf(x -> x.agent != owner);
+  public boolean cancelOrder(Order o)
+  {
+    return withdraw(o);
+  }
 
-    return orders;
+  /**
+   * Cancel all orders owned by an agent.
+   *
+   * @param owner Owner of orders
+   * @param type  side of book, or null for both
+   */
+  public void cancelOrders(Agent owner, OrderType type)
+  {
+    for (Order o : book.ordersBy(owner, type))
+      withdraw(o);
   }
 
-  public boolean cancelOrder(Order o)
+  /**
+   * Cancel order by its id.
+   *
+   * @param id Order id
+   * @return t/f order was found and cancelled
+   */
+  public boolean cancelOrder(long id)
   {
-    if (o.type == OrderType.BID)
-    {
-      return bids.remove(o);
-    }
-    else
-    {
-      return asks.remove(o);
-    }
-    // TODO note: possibly can be refactored into ``return (bids.remove(o) || asks.remove(o));''
+    Order o = book.get(id);
+
+    return o != null && withdraw(o);
   }
   // TODO? buy/sell methods? other methods? Average price etc
 
   public long getBidPrice() {
-    if (bids.isEmpty()) {
+    if (book.isEmpty(OrderType.BID)) {
       return 0L;
     }
-    bidPrice = bids.last().price;
+    bidPrice = book.bestPrice(OrderType.BID);
 
     return bidPrice;
   }
 
   public long getAskPrice()
   {
-    if (asks.isEmpty())
+    if (book.isEmpty(OrderType.ASK))
     {
       return -1L;
     }
-    sellPrice = asks.first().price;
+    sellPrice = book.bestPrice(OrderType.ASK);
 
     return sellPrice;
   }
 
 
   public void printOrders(Agent ag) {
-    for (Order o : ordersBy(ag, null)) {
+    for (Order o : book.ordersBy(ag, null)) {
       System.out.println(this.name + " " + o.toString());
     }
   }
 
   public void printOrders() {
     System.out.println("--------[ASKS]---------");
-    Iterator<Order> it = asks.descendingIterator();
-    while (it.hasNext())
+    List<Order> orders = book.list(OrderType.ASK);
+    ListIterator<Order> it = orders.listIterator(orders.size());
+    while (it.hasPrevious())
     {
-      System.out.println(it.next().toString());
+      System.out.println(it.previous().toString());
     }
-    it = bids.descendingIterator();
     System.out.println("--------[BIDS]---------");
-    while (it.hasNext())
+    for (Order o : book.list(OrderType.BID))
     {
-      System.out.println(it.next().toString());
+      System.out.println(o.toString());
     }
   }
 
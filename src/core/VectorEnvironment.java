@@ -0,0 +1,379 @@
+/* Program  : Threadneedle
+ *
+ * VectorEnvironment : N independent simulations, stepped in lockstep on a
+ *                     thread pool, with their observations and actions
+ *                     gathered into single batches.
+ *
+ * Date     : October 2026
+ *
+ * Comments : The simulation keeps its state in statics (Base.step, the
+ *            random number generator, the statistics and product
+ *            registries, the python investor list, ...), so each
+ *            simulation is loaded by its own class loader, which gives it
+ *            a private copy of the base, core, statistics and agents
+ *            packages. Other classes (gson, py4j, the jdk) are shared.
+ *            Each copy is driven through its own SimulationEnvironment,
+ *            and its loader is named for its environment (env0, env1, ...).
+ *
+ *            Batches are the per environment data concatenated in
+ *            environment order: states and rewards as for
+ *            SimulationEnvironment, actions one byte per investor, and
+ *            one done byte per environment.
+ *
+ *            Environments that finish an episode are reset with a new
+ *            seed before step() returns, and the states returned for them
+ *            are the initial states of the new episode.
+ */
+package core;
+
+import py4j.GatewayServer;
+
+import java.io.*;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.util.*;
+import java.util.concurrent.*;
+
+public class VectorEnvironment
+{
+  // Packages with simulation state, which are loaded once per environment
+  private static final String[] ISOLATED = {"base.", "core.", "statistics.", "agents."};
+
+  /**
+   * Result of a step for all environments.
+   */
+  public static class Result
+  {
+    private final byte[] observations;
+    private final byte[] rewards;
+    private final byte[] dones;
+
+    Result(byte[] observations, byte[] rewards, byte[] dones)
+    {
+      this.observations = observations;
+      this.rewards = rewards;
+      this.dones = dones;
+    }
+
+    public byte[] getObservations()
+    {
+      return observations;
+    }
+
+    public byte[] getRewards()
+    {
+      return rewards;
+    }
+
+    public byte[] getDones()
+    {
+      return dones;
+    }
+  }
+
+  /**
+   * Class loader giving a simulation its own copy of the isolated packages.
+   */
+  private static class IsolatingLoader extends ClassLoader
+  {
+    IsolatingLoader(String name, ClassLoader parent)
+    {
+      super(name, parent);
+    }
+
+    @Override
+    protected Class<?> loadClass(String name, boolean resolve)
+      throws ClassNotFoundException
+    {
+      if (!isolated(name))
+        return super.loadClass(name, resolve);
+
+      synchronized (getClassLoadingLock(name))
+      {
+        Class<?> c = findLoadedClass(name);
+
+        if (c == null)
+          c = findClass(name);
+        if (resolve)
+          resolveClass(c);
+        return c;
+      }
+    }
+
+    @Override
+    protected Class<?> findClass(String name) throws ClassNotFoundException
+    {
+      String resource = name.replace('.', '/') + ".class";
+
+      try (InputStream in = getParent().getResourceAsStream(resource))
+      {
+        if (in == null)
+          throw new ClassNotFoundException(name);
+
+        byte[] bytes = in.readAllBytes();
+        return defineClass(name, bytes, 0, bytes.length);
+      }
+      catch (IOException e)
+      {
+        throw new ClassNotFoundException(name, e);
+      }
+    }
+
+    private static boolean isolated(String name)
+    {
+      for (String p : ISOLATED)
+        if (name.startsWith(p))
+          return true;
+      return false;
+    }
+  }
+
+  /**
+   * One simulation, and the reflective handles used to drive it.
+   */
+  private static class Instance
+  {
+    final Object env;
+    final Method reset, step, getAgentIds;
+    final Method getObservations, getRewards, isDone;
+
+    byte[]  observations;
+    byte[]  rewards;
+    boolean done;
+    int     agents;
+
+    Instance(int i) throws ReflectiveOperationException
+    {
+      ClassLoader loader = new IsolatingLoader("env" + i, VectorEnvironment.class.getClassLoader());
+      Class<?>    clss   = loader.loadClass("core.SimulationEnvironment");
+      Class<?>    result = loader.loadClass("core.SimulationEnvironment$Result");
+
+      env             = clss.getConstructor().newInstance();
+      reset           = clss.getMethod("reset", int.class, String.class);
+      step            = clss.getMethod("step", byte[].class);
+      getAgentIds     = clss.getMethod("getAgentIds");
+      getObservations = result.getMethod("getObservations");
+      getRewards      = result.getMethod("getRewards");
+      isDone          = result.getMethod("isDone");
+    }
+
+    void reset(int seed, String config) throws ReflectiveOperationException
+    {
+      observations = (byte[]) reset.invoke(env, seed, config);
+      agents = observations.length / (PythonStockInvestor.STATE_LONGS * Long.BYTES);
+    }
+
+    void step(byte[] actions) throws ReflectiveOperationException
+    {
+      Object r = step.invoke(env, (Object) actions);
+
+      observations = (byte[]) getObservations.invoke(r);
+      rewards      = (byte[]) getRewards.invoke(r);
+      done         = (Boolean) isDone.invoke(r);
+    }
+  }
+
+  private final String          config;
+  private final Instance[]      instances;
+  private final ExecutorService pool;
+  private int                   nextSeed;
+
+  /**
+   * Constructor:
+   *
+   * @param n      No. of environments
+   * @param config json config or batch file, as for SimulationEnvironment
+   * @param seed   Seed for the first environment's first episode. Each new
+   *               episode in any environment takes the next seed.
+   */
+  public VectorEnvironment(int n, String config, int seed)
+  {
+    this.config = config;
+    this.nextSeed = seed;
+    this.instances = new Instance[n];
+
+    try
+    {
+      for (int i = 0; i < n; i++)
+        instances[i] = new Instance(i);
+    }
+    catch (ReflectiveOperationException e)
+    {
+      throw new RuntimeException("Failed to create simulation environment: " + e);
+    }
+
+    pool = Executors.newFixedThreadPool(Math.min(n, Runtime.getRuntime().availableProcessors()),
+                                        r -> {
+                                          Thread t = new Thread(r, "VectorEnvironment");
+                                          t.setDaemon(true);
+                                          return t;
+                                        });
+  }
+
+  /**
+   * Start new episodes in all environments.
+   *
+   * @return batched initial states
+   */
+  public byte[] reset()
+  {
+    int[] seeds = new int[instances.length];
+
+    for (int i = 0; i < seeds.length; i++)
+      seeds[i] = nextSeed++;
+
+    run(i -> instances[i].reset(seeds[i], config));
+
+    return gather(inst -> inst.observations);
+  }
+
+  /**
+   * Step all environments.
+   *
+   * @param actions batched actions, one byte per investor
+   * @return batched states, rewards and done flags
+   */
+  public Result step(byte[] actions)
+  {
+    int[] offsets = new int[instances.length + 1];
+
+    for (int i = 0; i < instances.length; i++)
+      offsets[i + 1] = offsets[i] + instances[i].agents;
+
+    if (actions.length != offsets[instances.length])
+      throw new IllegalArgumentException("Expected " + offsets[instances.length]
+                                         + " actions, got " + actions.length);
+
+    run(i -> instances[i].step(Arrays.copyOfRange(actions, offsets[i], offsets[i + 1])));
+
+    byte[] rewards = gather(inst -> inst.rewards);
+    byte[] dones   = new byte[instances.length];
+    int[]  seeds   = new int[instances.length];
+
+    // Seeds for resets are assigned in environment order, so that runs
+    // are repeatable regardless of thread scheduling.
+
+    for (int i = 0; i < instances.length; i++)
+    {
+      if (instances[i].done)
+      {
+        dones[i] = 1;
+        seeds[i] = nextSeed++;
+      }
+    }
+
+    run(i -> {
+      if (dones[i] != 0)
+        instances[i].reset(seeds[i], config);
+    });
+
+    return new Result(gather(inst -> inst.observations), rewards, dones);
+  }
+
+  /**
+   * Return the investor names for each environment, comma separated within
+   * an environment, and environments separated by ';'.
+   *
+   * @return agent names
+   */
+  public String getAgentIds()
+  {
+    StringJoiner ids = new StringJoiner(";");
+
+    try
+    {
+      for (Instance inst : instances)
+        ids.add((String) inst.getAgentIds.invoke(inst.env));
+    }
+    catch (ReflectiveOperationException e)
+    {
+      throw new RuntimeException(e);
+    }
+    return ids.toString();
+  }
+
+  public int size()
+  {
+    return instances.length;
+  }
+
+  /**
+   * Stop the thread pool.
+   */
+  public void close()
+  {
+    pool.shutdownNow();
+  }
+
+  private interface Task
+  {
+    void run(int i) throws ReflectiveOperationException;
+  }
+
+  /**
+   * Run task for each environment on the pool, and wait for all to finish.
+   */
+  private void run(Task task)
+  {
+    ArrayList<Future<?>> futures = new ArrayList<>(instances.length);
+
+    for (int i = 0; i < instances.length; i++)
+    {
+      final int n = i;
+
+      futures.add(pool.submit(() -> {
+        task.run(n);
+        return null;
+      }));
+    }
+
+    try
+    {
+      for (Future<?> f : futures)
+        f.get();
+    }
+    catch (InterruptedException e)
+    {
+      Thread.currentThread().interrupt();
+      throw new RuntimeException("Interrupted stepping environments");
+    }
+    catch (ExecutionException e)
+    {
+      Throwable cause = e.getCause();
+
+      if (cause instanceof java.lang.reflect.InvocationTargetException)
+        cause = cause.getCause();
+      throw new RuntimeException("Simulation environment failed: " + cause, cause);
+    }
+  }
+
+  private byte[] gather(java.util.function.Function<Instance, byte[]> field)
+  {
+    int size = 0;
+
+    for (Instance inst : instances)
+      size += field.apply(inst).length;
+
+    ByteBuffer batch = ByteBuffer.allocate(size);
+
+    for (Instance inst : instances)
+      batch.put(field.apply(inst));
+
+    return batch.array();
+  }
+
+  /**
+   * Run a vector environment as the entry point of a py4j gateway.
+   *
+   * @param args no. of environments, config file, [first seed]
+   */
+  public static void main(String[] args)
+  {
+    int seed = args.length > 2 ? Integer.parseInt(args[2]) : 0;
+
+    GatewayServer server = new GatewayServer(new VectorEnvironment(Integer.parseInt(args[0]),
+                                                                   args[1], seed));
+    server.start();
+    System.out.println("Vector environment gateway started");
+  }
+}
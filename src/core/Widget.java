@@ -17,6 +17,7 @@ import base.*;
 public class Widget implements Comparable<Widget>
 {
   String name;                  // Label to identify widget
+  int    productId;             // Registry id for name (see ProductRegistry)
   protected int wid;            // unique widget id, used to identify object
   boolean consumable;           // widget can be destroyed
   int     created;              // Simulation time point it was created
@@ -29,8 +30,24 @@ public class Widget implements Comparable<Widget>
   Agent owner;
 
   public Widget(String name, int lifetime, long quantity)
+  {
+    this(name, lifetime, quantity, ProductRegistry.register(name));
+  }
+
+  /**
+   * Constructor with the product id given, so that containers which
+   * aren't products (Shares) can be created without registering their
+   * name with the ProductRegistry.
+   *
+   * @param name      Label identifying widget
+   * @param lifetime  time to live
+   * @param quantity  no. of items
+   * @param productId Registry id, or ProductRegistry.NONE
+   */
+  protected Widget(String name, int lifetime, long quantity, int productId)
   {
     this.name = name;
+    this.productId = productId;
     this.wid = Base.assignWidgetID();
     this.created = Base.step;
     this.ttl = lifetime * Base.Time.MONTH.period();
@@ -59,7 +76,16 @@ public class Widget implements Comparable<Widget>
 
   public Widget(String name, int lifetime, Widget w, long newQ)
   {
-    this(name, lifetime, newQ);
+    this(name, lifetime, w, newQ, ProductRegistry.register(name));
+  }
+
+  /**
+   * Splitting constructor with the product id given, as above.
+   */
+  protected Widget(String name, int lifetime, Widget w, long newQ,
+                   int productId)
+  {
+    this(name, lifetime, newQ, productId);
 
     w.quantity -= newQ;
 
@@ -87,7 +113,7 @@ public class Widget implements Comparable<Widget>
     }
     else
     {
-      Widget w = new Widget(name, ttl, newQ);
+      Widget w = new Widget(name, ttl, newQ, productId);
       w.created = this.created;
 
       this.quantity -= newQ;
@@ -158,6 +184,16 @@ public class Widget implements Comparable<Widget>
     }
   }
 
+  /**
+   * Return the registry id for the product this widget contains.
+   *
+   * @return product id
+   */
+  public int getProductId()
+  {
+    return productId;
+  }
+
   /**
    * Getter for quantity contained by widget
    *
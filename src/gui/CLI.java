@@ -21,7 +21,9 @@ import charts.ChartController;
 import charts.StepChart;
 import core.*;
 import javafx.application.Platform;
+import statistics.DerivedStatistic;
 import statistics.Statistic;
+import statistics.StatisticRecorder;
 
 import java.io.*;
 import java.lang.reflect.Field;
@@ -41,6 +43,7 @@ public class CLI implements Runnable
   BufferedReader br = null;
   boolean debug = false;
   int DEFAULT_STEPS = 1;     // Default Step to run simulation for step command
+  StatisticRecorder recorder = null;   // Statistics recording
 
   String[] cmds =
   {
@@ -58,7 +61,10 @@ public class CLI implements Runnable
     "load file                : load new config file",
     "preferences  filename    : load Threadneedle parameters from file",
     "config                   : show current parameters for simulation",
-    "statistics               : show statistics registered with simulation",
+    "statistics [lazy on|off] : show statistics registered with simulation, or only roll over consumed statistics",
+    "record file [steps] | add regex... | stop : record statistics matching name/group regex to file, in blocks of steps",
+    "metrics [port [ms]] | stop : serve metrics on localhost:port/metrics (default 9464), updated every ms",
+    "derive [name expression | remove name] : define statistic as expression over others, f.ex. 100 * mvpt-PT / mvpt-M",
     "",
     "printmoney agent-id x    : increase agent's deposit by x",
     "addagent type bankname [options] : add an agent with [options] as properties key=value map",
@@ -467,15 +473,163 @@ public class CLI implements Runnable
 
   /**
    * statistics - print out information on simulation statistics.
+   *
+   * statistics lazy on|off - only roll over statistics with consumers
    * 
-   * @param fields fields supplied to command line (unused)
+   * @param fields fields supplied to command line
    */
    public void statistics(String[] fields)
    {
-     for(Statistic s: Statistic.names.values())
+     if (fields.length > 2 && fields[1].equals("lazy"))
+     {
+        Statistic.lazy = fields[2].equals("on");
+     }
+     else
+     {
+       for(Statistic s: Statistic.names.values())
+       {
+          System.out.println(s.name + " " + s.history.size()
+                             + (s.isLive() ? "" : " (dormant)"));
+       }
+     }
+     System.out.println("Statistics: " + Statistic.liveCount() + " live, "
+                        + Statistic.dormantCount() + " dormant");
+   }
+
+  /**
+   * record - record statistics for the whole run to a columnar file.
+   *
+   * record file [steps]  - start recording, in blocks of steps
+   * record add regex ... - record statistics whose name or group matches
+   * record stop          - write out and close recording
+   * record               - show statistics being recorded
+   *
+   * @param fields fields supplied to command line
+   */
+   public void record(String[] fields)
+   {
+     if (fields.length == 1)
+     {
+       if (recorder == null)
+         System.out.println("Not recording");
+       else
+         System.out.println("Recording to " + recorder.getFile() + ": "
+                            + recorder.getColumns());
+     }
+     else if (fields[1].equals("add"))
+     {
+       if (recorder == null)
+       {
+         System.out.println("record file must be used before record add");
+         return;
+       }
+       for (int i = 2; i < fields.length; i++)
+         System.out.println(fields[i] + ": " + recorder.select(fields[i])
+                            + " statistics");
+     }
+     else if (fields[1].equals("stop"))
+     {
+       if (recorder != null)
+       {
+         recorder.close();
+         System.out.println("Recorded " + recorder.getBlocks()
+                            + " blocks to " + recorder.getFile());
+         recorder = null;
+       }
+     }
+     else
+     {
+       if (recorder != null)
+         recorder.close();
+
+       try
+       {
+         recorder = fields.length > 2
+                    ? new StatisticRecorder(new File(fields[1]),
+                                            Integer.parseInt(fields[2]))
+                    : new StatisticRecorder(new File(fields[1]));
+       }
+       catch (IOException | IllegalArgumentException e)
+       {
+         System.err.println("Failed to start recording: " + e);
+         recorder = null;
+       }
+     }
+   }
+
+  /**
+   * metrics - serve live metrics in Prometheus format on localhost.
+   *
+   * metrics [port [ms]] - start serving, snapshot taken at most every ms
+   * metrics stop        - stop serving
+   *
+   * @param fields fields supplied to command line
+   */
+   public void metrics(String[] fields)
+   {
+     if (simeng.metrics != null)
+     {
+       simeng.metrics.stop();
+       simeng.metrics = null;
+     }
+
+     if (fields.length > 1 && fields[1].equals("stop"))
+       return;
+
+     try
+     {
+       int  port     = fields.length > 1 ? Integer.parseInt(fields[1])
+                                         : MetricsServer.DEFAULT_PORT;
+       long interval = fields.length > 2 ? Long.parseLong(fields[2])
+                                         : MetricsServer.DEFAULT_INTERVAL;
+
+       simeng.metrics = new MetricsServer(port, interval);
+       System.out.println("Serving metrics on http://localhost:"
+                          + simeng.metrics.getPort() + "/metrics");
+     }
+     catch (IOException | NumberFormatException e)
+     {
+       System.err.println("Failed to start metrics server: " + e);
+     }
+   }
+
+  /**
+   * derive - define statistics computed from other statistics.
+   *
+   * derive name expression - define name as expression, see
+   *                          DerivedStatistic
+   * derive remove name     - remove definition
+   * derive                 - list definitions
+   *
+   * @param fields fields supplied to command line
+   */
+   public void derive(String[] fields)
+   {
+     if (fields.length == 1)
+     {
+       for (DerivedStatistic d : DerivedStatistic.getDefinitions().values())
+         System.out.println(d.name + " = " + d.expression);
+     }
+     else if (fields[1].equals("remove") && fields.length == 3)
      {
-        System.out.println(s.name + " " + s.history.size());
+       if (!DerivedStatistic.undefine(fields[2]))
+         System.out.println("No derived statistic " + fields[2]);
+     }
+     else if (fields.length > 2)
+     {
+       String expression = String.join(" ", Arrays.copyOfRange(fields, 2,
+                                                               fields.length));
+       try
+       {
+         DerivedStatistic.define(fields[1], "derived", expression);
+       }
+       catch (IllegalArgumentException e)
+       {
+         System.out.println(e.getMessage());
+       }
      }
+     else
+       System.out.println(getHelp("derive"));
    }
 
   /**
@@ -605,45 +759,6 @@ public class CLI implements Runnable
    */
   public void addagent(String[] fields)
   {
-    // Determine what kind of agent is being added
-
-    Class agentType;
-
-    try
-    {
-      // Internal agents are in core/, all other agents should be in agents/.
-      agentType = Class.forName("core." + fields[1]);
-      if (!Agent.class.isAssignableFrom(agentType))
-      {
-        throw new ClassNotFoundException(agentType + " does not extend Agent");
-      }
-    }
-    catch (ClassNotFoundException e2)
-    {
-      try
-      {
-        agentType = Class.forName("agents." + fields[1]);
-
-        if (!Agent.class.isAssignableFrom(agentType))
-        {
-          throw new ClassNotFoundException(agentType + 
-                                           " does not extend Agent");
-        }
-      }
-      catch (ClassNotFoundException e4)
-      {
-         System.err.println("Failed to find agent class: " + fields[1]);
-         System.err.println(e4);
-         return;
-      }
-    }
-    catch (Exception e3)
-    {
-      System.err.println("Unknown exception occurred!");
-      System.err.println(e3);
-      return;
-    }
-
     // Configure the agent as necessary. By convention, the first
 	// and required command line parameter is the agent's bank.
 
@@ -658,28 +773,7 @@ public class CLI implements Runnable
       properties.put(property[0], property[1]);
     }
 
-    if (agentType == Bank.class) 
-    {
-      simeng.addEntity(agentType, properties, null, properties.get("name"));
-      return;
-    }
-
-    if(simeng.govt.getBank(fields[2]) == null)
-       System.out.println("Error: bank not found");
-    else
-    {
-       try
-       {
-          simeng.addEntity(agentType, properties,
-                           simeng.govt.getBank(fields[2]),properties.get("name"));
-       }
-       catch (Exception e)
-       {
-          System.out.println("Failed to add agent");
-          System.out.println(e);
-		  e.printStackTrace();
-       }
-    }
+    simeng.addAgent(fields[1], fields.length > 2 ? fields[2] : null, properties);
   }
 
   /**
@@ -746,11 +840,10 @@ public class CLI implements Runnable
       try {
         // who owns shares called `field`
         StockMarket m = StockExchange.findMarket(field, simeng.govt);
-        if (m != null) {
+        if (m != null && m.capTable != null) {
           List<Agent> owners = new LinkedList<>();
-          for (Shares s : m.sharesIssued) {
-            Agent owner = s.getOwner();
-            owners.add(owner);
+          for (CapTable.Holding h : m.capTable.getHolders()) {
+            owners.add(h.getOwner());
           }
 
           Collections.sort(owners, (o1, o2) -> o1.name.compareTo(o2.name));
@@ -1001,6 +1094,9 @@ public class CLI implements Runnable
    */
   public void exit(String[] cmdline)
   {
+    if (recorder != null)
+      recorder.close();
+
     System.exit(0);
   }
 
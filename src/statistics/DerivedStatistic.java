@@ -0,0 +1,598 @@
+/* Program  : Threadneedle
+ *
+ * DerivedStatistic : Statistic defined as an expression over other
+ *                    statistics, f.ex. mvpt-PT / mvpt-M
+ *
+ * Date     : October 2026
+ *
+ * Comments : The expression is compiled once into a tree. Nothing is
+ *            computed as the simulation steps: when the statistic is read
+ *            (by a chart, exporter or agent), the values for any steps
+ *            since it was last read are computed from its operands'
+ *            histories and appended to its own, so each step's value is
+ *            computed at most once, and an unread statistic costs nothing.
+ *
+ *            While the statistic has consumers its operands are declared
+ *            MODEL consumers, so that they stay live in lazy mode.
+ *
+ *            Expressions:
+ *
+ *              name             value of statistic. Names may contain
+ *                               letters, digits, _ . : and - (so use
+ *                               spaces around subtraction), or be quoted
+ *                               "like this"
+ *              123 1.5          numbers
+ *              + - * / %        arithmetic (x / 0 is 0), unary -
+ *              ( )              grouping
+ *              abs(x) min(x, y) max(x, y)
+ *              lag(x, n)        value of x n steps earlier
+ *              mean(x, n)       mean of x over the last n steps
+ *
+ *            Values are computed as doubles and rounded, so scale ratios
+ *            as required, f.ex. 100 * mvpt-PT / mvpt-M.
+ *
+ *            The derived statistic has a value for every step. An operand
+ *            accumulated over stepModulo steps (like mvpt-PT) gives, at
+ *            each step, the value of its last period complete at the end
+ *            of that step, so lag() and mean() always count steps.
+ *
+ *            Operands are read without becoming consumed by the read.
+ *
+ *            Definitions are kept across simulation resets.
+ */
+package statistics;
+
+import base.Base;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+public class DerivedStatistic extends Statistic
+{
+  // Definitions by name, in order defined
+  private static final LinkedHashMap<String, DerivedStatistic> definitions
+    = new LinkedHashMap<>();
+
+  public final String expression;
+
+  private final Node               root;
+  private final ArrayList<Operand> operands = new ArrayList<>();
+
+  private int     computed   = -1;                 // Step history is up to
+  private boolean evaluating = false;
+
+  /*
+   * Compiled expression, evaluated k steps back.
+   */
+  private interface Node
+  {
+    double eval(int k);
+  }
+
+  /*
+   * Statistic referenced by the expression. Looked up by name when
+   * evaluated, since statistics may be created after the definition, or
+   * recreated by a reset.
+   */
+  private static class Operand
+  {
+    final String name;
+    Statistic    held;                  // Statistic we are a consumer of
+
+    Operand(String name)
+    {
+      this.name = name;
+    }
+  }
+
+  /*
+   * Constructor: expression has been checked by define().
+   */
+  private DerivedStatistic(String name, String group, String expression)
+  {
+    super(name, group, Type.SINGLE);
+
+    this.expression = expression;
+    this.root = new Parser(expression, this, operands).parse();
+
+    // Consumers may have been declared during registration (recorders)
+    if (consumed())
+      hold(true);
+  }
+
+  /**
+   * Define a derived statistic, replacing any statistic with its name.
+   *
+   * @param name       label for statistic
+   * @param group      group statistic belongs to (null for none)
+   * @param expression expression for statistic's value
+   * @return statistic
+   * @throws IllegalArgumentException if the expression isn't valid
+   */
+  public static DerivedStatistic define(String name, String group,
+                                        String expression)
+  {
+    // Check before replacing any existing statistic
+    new Parser(expression, null, new ArrayList<>()).parse();
+
+    DerivedStatistic s   = new DerivedStatistic(name, group, expression);
+    DerivedStatistic old = definitions.put(name, s);
+
+    if (old != null)
+      old.hold(false);
+
+    return s;
+  }
+
+  /**
+   * Remove a derived statistic.
+   *
+   * @param name label for statistic
+   * @return t/f statistic was defined
+   */
+  public static boolean undefine(String name)
+  {
+    DerivedStatistic s = definitions.remove(name);
+
+    if (s != null)
+    {
+      s.hold(false);
+      if (names.get(name) == s)
+        removeStatistic(name);
+    }
+
+    return s != null;
+  }
+
+  /**
+   * Return current definitions.
+   *
+   * @return derived statistics by name
+   */
+  public static Map<String, DerivedStatistic> getDefinitions()
+  {
+    return new LinkedHashMap<>(definitions);
+  }
+
+  /*
+   * Recreate definitions after statistics have been cleared.
+   */
+  static void redefineAll()
+  {
+    ArrayList<DerivedStatistic> old = new ArrayList<>(definitions.values());
+
+    definitions.clear();
+    for (DerivedStatistic s : old)
+      define(s.name, s.group, s.expression);
+  }
+
+  /**
+   * Values can't be added to a derived statistic.
+   */
+  @Override
+  public void add(long stat, long weight)
+  {
+  }
+
+  /**
+   * Values are computed when read, not at rollover.
+   */
+  @Override
+  public void rollover()
+  {
+  }
+
+  @Override
+  public void reset()
+  {
+    super.reset();
+    computed = -1;
+  }
+
+  @Override
+  protected void discardHistory()
+  {
+    super.discardHistory();
+    computed = -1;                       // Recompute from operands
+  }
+
+  @Override
+  public long getCurrent()
+  {
+    return get();
+  }
+
+  @Override
+  public Statistic addConsumer(Consumer c)
+  {
+    boolean was = consumed();
+
+    super.addConsumer(c);
+    if (!was && operands != null)
+      hold(true);
+
+    return this;
+  }
+
+  @Override
+  public void removeConsumer(Consumer c)
+  {
+    super.removeConsumer(c);
+    if (!consumed() && operands != null)
+      hold(false);
+  }
+
+  @Override
+  protected void refresh()
+  {
+    if (computed == Base.step || evaluating || root == null)
+      return;
+
+    evaluating = true;
+    try
+    {
+      hold(consumed());
+
+      // Steps since last computed, or the first time as many as the
+      // operands have history for
+      int steps = Base.step - computed;
+
+      if (computed < 0)
+      {
+        steps = historyLength;
+        for (Operand o : operands)
+        {
+          Statistic s = names.get(o.name);
+
+          steps = Math.min(steps, s == null ? 0
+                                  : s.historySize() * s.stepModulo);
+        }
+      }
+
+      for (int k = Math.min(steps, historyLength) - 1; k >= 0; k--)
+      {
+        double v = root.eval(k);
+
+        append(Double.isNaN(v) || Double.isInfinite(v) ? 0 : Math.round(v));
+      }
+      computed = Base.step;
+    }
+    finally
+    {
+      evaluating = false;
+    }
+  }
+
+  private boolean consumed()
+  {
+    for (Consumer c : Consumer.values())
+      if (hasConsumer(c))
+        return true;
+
+    return false;
+  }
+
+  /*
+   * Declare ourselves a consumer of our operands, or stop being one.
+   */
+  private void hold(boolean hold)
+  {
+    for (Operand o : operands)
+    {
+      Statistic s = hold ? names.get(o.name) : null;
+
+      if (s == o.held || s == this)
+        continue;
+
+      if (o.held != null)
+        o.held.removeConsumer(Consumer.MODEL);
+      if (s != null)
+        s.addConsumer(Consumer.MODEL);
+
+      o.held = s;
+    }
+  }
+
+  /*
+   * Recursive descent parser, compiling an expression to a tree.
+   */
+  private static class Parser
+  {
+    private final String             text;
+    private final DerivedStatistic   owner;
+    private final ArrayList<Operand> operands;
+    private int                      pos = 0;
+
+    Parser(String text, DerivedStatistic owner, ArrayList<Operand> operands)
+    {
+      this.text = text;
+      this.owner = owner;
+      this.operands = operands;
+    }
+
+    Node parse()
+    {
+      Node n = expression();
+
+      skip();
+      if (pos < text.length())
+        throw error("unexpected '" + text.charAt(pos) + "'");
+
+      return n;
+    }
+
+    // expression := term (('+' | '-') term)*
+    private Node expression()
+    {
+      Node n = term();
+
+      while (true)
+      {
+        if (accept('+'))
+        {
+          Node l = n, r = term();
+          n = k -> l.eval(k) + r.eval(k);
+        }
+        else if (accept('-'))
+        {
+          Node l = n, r = term();
+          n = k -> l.eval(k) - r.eval(k);
+        }
+        else
+          return n;
+      }
+    }
+
+    // term := unary (('*' | '/' | '%') unary)*
+    private Node term()
+    {
+      Node n = unary();
+
+      while (true)
+      {
+        if (accept('*'))
+        {
+          Node l = n, r = unary();
+          n = k -> l.eval(k) * r.eval(k);
+        }
+        else if (accept('/'))
+        {
+          Node l = n, r = unary();
+          n = k -> divide(l.eval(k), r.eval(k));
+        }
+        else if (accept('%'))
+        {
+          Node l = n, r = unary();
+          n = k -> { double d = r.eval(k); return d == 0 ? 0 : l.eval(k) % d; };
+        }
+        else
+          return n;
+      }
+    }
+
+    // unary := '-' unary | primary
+    private Node unary()
+    {
+      if (accept('-'))
+      {
+        Node n = unary();
+        return k -> -n.eval(k);
+      }
+      return primary();
+    }
+
+    // primary := number | name | function '(' args ')' | '(' expression ')'
+    private Node primary()
+    {
+      skip();
+
+      if (accept('('))
+      {
+        Node n = expression();
+        expect(')');
+        return n;
+      }
+
+      if (pos >= text.length())
+        throw error("expression expected");
+
+      char c = text.charAt(pos);
+
+      if (Character.isDigit(c) || c == '.')
+      {
+        int start = pos;
+
+        while (pos < text.length()
+               && (Character.isDigit(text.charAt(pos)) || text.charAt(pos) == '.'))
+          pos++;
+
+        try
+        {
+          double v = Double.parseDouble(text.substring(start, pos));
+          return k -> v;
+        }
+        catch (NumberFormatException e)
+        {
+          throw error("invalid number " + text.substring(start, pos));
+        }
+      }
+
+      if (c == '"')
+      {
+        int end = text.indexOf('"', pos + 1);
+
+        if (end < 0)
+          throw error("unterminated name");
+
+        String name = text.substring(pos + 1, end);
+        pos = end + 1;
+        return operand(name);
+      }
+
+      if (isNameChar(c) && !Character.isDigit(c))
+      {
+        String name = name();
+
+        if (peek('('))
+          return function(name);
+
+        return operand(name);
+      }
+
+      throw error("unexpected '" + c + "'");
+    }
+
+    private Node function(String name)
+    {
+      expect('(');
+      Node x = expression();
+
+      switch (name)
+      {
+        case "abs":
+          expect(')');
+          return k -> Math.abs(x.eval(k));
+
+        case "min":
+        case "max":
+        {
+          expect(',');
+          Node y = expression();
+          expect(')');
+
+          return name.equals("min") ? k -> Math.min(x.eval(k), y.eval(k))
+                                    : k -> Math.max(x.eval(k), y.eval(k));
+        }
+
+        case "lag":
+        {
+          expect(',');
+          int n = count();
+          expect(')');
+          return k -> x.eval(k + n);
+        }
+
+        case "mean":
+        {
+          expect(',');
+          int n = Math.max(1, count());
+          expect(')');
+          return k ->
+          {
+            double sum = 0;
+
+            for (int i = 0; i < n; i++)
+              sum += x.eval(k + i);
+
+            return sum / n;
+          };
+        }
+
+        default:
+          throw error("unknown function " + name);
+      }
+    }
+
+    private Node operand(String name)
+    {
+      Operand o = new Operand(name);
+
+      operands.add(o);
+      return k ->
+      {
+        Statistic s = names.get(o.name);
+
+        return s == null || s == owner ? 0 : s.historyAt(periodsBack(s, k));
+      };
+    }
+
+    // Non-negative integer argument
+    private int count()
+    {
+      skip();
+
+      int start = pos;
+
+      while (pos < text.length() && Character.isDigit(text.charAt(pos)))
+        pos++;
+
+      if (start == pos)
+        throw error("no. of steps expected");
+
+      return Integer.parseInt(text.substring(start, pos));
+    }
+
+    private String name()
+    {
+      int start = pos;
+
+      // '-' is part of a name only when followed by another name character
+      while (pos < text.length()
+             && (isNameChar(text.charAt(pos))
+                 || (text.charAt(pos) == '-' && pos + 1 < text.length()
+                     && isNameChar(text.charAt(pos + 1)))))
+        pos++;
+
+      return text.substring(start, pos);
+    }
+
+    private boolean isNameChar(char c)
+    {
+      return Character.isLetterOrDigit(c) || c == '_' || c == '.' || c == ':';
+    }
+
+    private void skip()
+    {
+      while (pos < text.length() && Character.isWhitespace(text.charAt(pos)))
+        pos++;
+    }
+
+    private boolean peek(char c)
+    {
+      skip();
+      return pos < text.length() && text.charAt(pos) == c;
+    }
+
+    private boolean accept(char c)
+    {
+      if (peek(c))
+      {
+        pos++;
+        return true;
+      }
+      return false;
+    }
+
+    private void expect(char c)
+    {
+      if (!accept(c))
+        throw error("'" + c + "' expected");
+    }
+
+    private IllegalArgumentException error(String message)
+    {
+      return new IllegalArgumentException("Invalid expression \"" + text
+                                          + "\" at " + pos + ": " + message);
+    }
+  }
+
+  /*
+   * Return index in a statistic's history of the value for k steps back:
+   * the last of its periods complete at the end of that step.
+   */
+  private static int periodsBack(Statistic s, int k)
+  {
+    int m    = Math.max(1, s.stepModulo);
+    int step = Base.step - 1 - k;                    // Step k back
+    int last = Base.step / m - 1;                    // Last period held
+    int then = Math.floorDiv(step + 1, m) - 1;       // Last period at step
+
+    return last - then;
+  }
+
+  private static double divide(double a, double b)
+  {
+    return b == 0 ? 0 : a / b;
+  }
+}
@@ -0,0 +1,218 @@
+/* Program  : Threadneedle
+ *
+ * Distribution : Statistic summarising the distribution of per agent
+ *                values each step - f.ex. deposits or income.
+ *
+ * Date     : October 2026
+ *
+ * Comments : Each add() is a sample (the weight is the no. of agents with
+ *            that value), kept in a Sketch. At rollover the step's
+ *            samples are summarised and published as statistics in the
+ *            same group:
+ *
+ *              <name>:p10 <name>:p50 <name>:p90 <name>:p99  quantiles
+ *              <name>:mean
+ *              <name>:gini   Gini coefficient x GINI_SCALE
+ *
+ *            The distribution's own value is the median. The last step's
+ *            histogram is available from getHistogram().
+ *
+ *            Samples can be added from several threads. Consumers of the
+ *            parts are also declared on the distribution, since publishing
+ *            them depends on its rollover, so in lazy mode it is live while
+ *            it or any of its parts is consumed.
+ */
+package statistics;
+
+import base.Base;
+
+public class Distribution extends Statistic
+{
+  public static final double[] QUANTILES  = {0.1, 0.5, 0.9, 0.99};
+  public static final String[] PARTS      = {"p10", "p50", "p90", "p99",
+                                             "mean", "gini"};
+  public static final int      GINI_SCALE = 1000;
+
+  private volatile Sketch current = new Sketch();
+  private Sketch          last    = new Sketch();     // Last step published
+
+  private final Part[] parts = new Part[PARTS.length];
+
+  /*
+   * Statistic holding one summary value, appended by the distribution's
+   * rollover rather than its own.
+   */
+  private static class Part extends Statistic
+  {
+    private final Distribution owner;
+
+    Part(Distribution owner, String name, String group)
+    {
+      super(name, group, Type.SINGLE);
+      this.owner = owner;
+
+      // Consumers declared during registration (recorders)
+      for (Consumer c : Consumer.values())
+        for (int i = 0; i < consumerCount(c); i++)
+          owner.addConsumer(c);
+    }
+
+    @Override
+    public Statistic addConsumer(Consumer c)
+    {
+      super.addConsumer(c);
+      if (owner != null)
+        owner.addConsumer(c);
+
+      return this;
+    }
+
+    @Override
+    public void removeConsumer(Consumer c)
+    {
+      if (!hasConsumer(c))
+        return;
+
+      super.removeConsumer(c);
+      owner.removeConsumer(c);
+    }
+
+    @Override
+    public void rollover()
+    {
+    }
+  }
+
+  /**
+   * Constructor
+   *
+   * @param name  label for statistic
+   * @param group group statistic and its parts belong to
+   */
+  public Distribution(String name, String group)
+  {
+    super(name, group, Type.SINGLE);
+
+    for (int i = 0; i < PARTS.length; i++)
+      parts[i] = new Part(this, name + ":" + PARTS[i], group);
+  }
+
+  /**
+   * Return the distribution with the specified name, creating it if it
+   * doesn't exist (or a statistic of another type has the name).
+   *
+   * @param name  Name for statistic
+   * @param group Group for statistic
+   * @return distribution
+   */
+  public static Distribution getDistribution(String name, String group)
+  {
+    Statistic s = names.get(name);
+
+    return s instanceof Distribution ? (Distribution) s
+                                     : new Distribution(name, group);
+  }
+
+  /**
+   * Add a sample.
+   *
+   * @param stat   value
+   * @param weight no. of occurrences
+   */
+  @Override
+  public void add(long stat, long weight)
+  {
+    expire();
+    current.add(stat, weight);
+  }
+
+  /**
+   * Return the median of the samples so far this step.
+   *
+   * @return median
+   */
+  @Override
+  public long getCurrent()
+  {
+    expire();
+    return current.quantile(0.5);
+  }
+
+  /**
+   * Return the samples added this step, f.ex. to merge in samples
+   * accumulated separately by another thread.
+   *
+   * @return sketch
+   */
+  public Sketch getSketch()
+  {
+    return current;
+  }
+
+  /**
+   * Return summary of last step's samples.
+   *
+   * @return sketch
+   */
+  public Sketch getLast()
+  {
+    return last;
+  }
+
+  /**
+   * Return histogram of last step's samples.
+   *
+   * @param bins no. of bins
+   * @return histogram
+   */
+  public Sketch.Histogram getHistogram(int bins)
+  {
+    return last.histogram(bins);
+  }
+
+  /**
+   * Return Gini coefficient of last step's samples.
+   *
+   * @return Gini coefficient
+   */
+  public double getGini()
+  {
+    return last.gini();
+  }
+
+  @Override
+  public void rollover()
+  {
+    if ((Base.step % stepModulo) != 0)
+      return;
+
+    // Swap, so the next step's samples go to a cleared sketch
+    Sketch s = current;
+
+    last.clear();
+    current = last;
+    last = s;
+
+    for (int i = 0; i < QUANTILES.length; i++)
+      parts[i].append(s.quantile(QUANTILES[i]));
+
+    parts[QUANTILES.length].append(s.mean());
+    parts[QUANTILES.length + 1].append(Math.round(s.gini() * GINI_SCALE));
+
+    append(s.quantile(0.5));
+  }
+
+  @Override
+  protected void discardCurrent()
+  {
+    current.clear();
+  }
+
+  @Override
+  public void reset()
+  {
+    super.reset();
+    current.clear();
+    last.clear();
+  }
+}
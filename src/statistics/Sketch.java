@@ -0,0 +1,334 @@
+/* Program  : Threadneedle
+ *
+ * Sketch   : Streaming summary of a distribution of long values, with
+ *            bounded memory and relative accuracy.
+ *
+ * Date     : October 2026
+ *
+ * Comments : Values are counted in log-linear buckets (as in an HDR
+ *            histogram): values below SUB have a bucket each, and each
+ *            power of two above that is divided into SUB/2 equal buckets,
+ *            so a bucket's width is at most 2/SUB of its values. Negative
+ *            values are counted in a mirror image set of buckets. The
+ *            exact sum of the values in each bucket is also kept, so
+ *            means and the Gini coefficient only lose the spread within
+ *            buckets.
+ *
+ *            Counts and sums are atomic, so samples can be added from
+ *            several threads at once, and sketches can be merged - f.ex.
+ *            one per thread, combined at the end of the step.
+ *
+ *            Memory is 2 x BUCKETS longs per sign, whatever the no. of
+ *            samples.
+ */
+package statistics;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+public class Sketch
+{
+  private static final int SHIFT = 6;
+  private static final int SUB   = 1 << SHIFT;       // Sub-buckets per octave
+  private static final int HALF  = SUB / 2;
+
+  public static final int BUCKETS = SUB + (63 - SHIFT) * HALF;  // per sign
+
+  // Bucket i of positive values is index i, of negative values BUCKETS + i
+  private final AtomicLongArray counts = new AtomicLongArray(2 * BUCKETS);
+  private final AtomicLongArray sums   = new AtomicLongArray(2 * BUCKETS);
+
+  private final AtomicLong count = new AtomicLong();
+  private final AtomicLong min   = new AtomicLong(Long.MAX_VALUE);
+  private final AtomicLong max   = new AtomicLong(Long.MIN_VALUE);
+
+  /**
+   * Histogram over equal width bins between the smallest and largest
+   * values.
+   */
+  public static class Histogram
+  {
+    public final long[] edges;           // bins + 1 bin boundaries
+    public final long[] counts;
+
+    Histogram(long[] edges, long[] counts)
+    {
+      this.edges = edges;
+      this.counts = counts;
+    }
+  }
+
+  /**
+   * Add a sample.
+   *
+   * @param v value
+   */
+  public void add(long v)
+  {
+    add(v, 1);
+  }
+
+  /**
+   * Add a value occurring weight times.
+   *
+   * @param v      value
+   * @param weight no. of occurrences
+   */
+  public void add(long v, long weight)
+  {
+    if (weight <= 0)
+      return;
+
+    int i = index(v);
+
+    counts.addAndGet(i, weight);
+    sums.addAndGet(i, v * weight);
+    count.addAndGet(weight);
+    min.accumulateAndGet(v, Math::min);
+    max.accumulateAndGet(v, Math::max);
+  }
+
+  /**
+   * Add the samples in another sketch to this one.
+   *
+   * @param other sketch to merge
+   */
+  public void merge(Sketch other)
+  {
+    for (int i = 0; i < counts.length(); i++)
+    {
+      long c = other.counts.get(i);
+
+      if (c > 0)
+      {
+        counts.addAndGet(i, c);
+        sums.addAndGet(i, other.sums.get(i));
+      }
+    }
+    count.addAndGet(other.count.get());
+    min.accumulateAndGet(other.min.get(), Math::min);
+    max.accumulateAndGet(other.max.get(), Math::max);
+  }
+
+  /**
+   * Remove all samples.
+   */
+  public void clear()
+  {
+    for (int i = 0; i < counts.length(); i++)
+    {
+      if (counts.get(i) != 0)
+      {
+        counts.set(i, 0);
+        sums.set(i, 0);
+      }
+    }
+    count.set(0);
+    min.set(Long.MAX_VALUE);
+    max.set(Long.MIN_VALUE);
+  }
+
+  public long count()
+  {
+    return count.get();
+  }
+
+  public long min()
+  {
+    return count() == 0 ? 0 : min.get();
+  }
+
+  public long max()
+  {
+    return count() == 0 ? 0 : max.get();
+  }
+
+  /**
+   * Return sum of samples.
+   *
+   * @return sum
+   */
+  public long sum()
+  {
+    long sum = 0;
+
+    for (int i = 0; i < sums.length(); i++)
+      sum += sums.get(i);
+
+    return sum;
+  }
+
+  public long mean()
+  {
+    long n = count();
+
+    return n == 0 ? 0 : sum() / n;
+  }
+
+  /**
+   * Return an estimate of a quantile, interpolated within the bucket it
+   * falls in.
+   *
+   * @param q quantile, 0 to 1
+   * @return value
+   */
+  public long quantile(double q)
+  {
+    long n = count();
+
+    if (n == 0)
+      return 0;
+
+    double rank = Math.max(0, Math.min(1, q)) * (n - 1);
+    long   seen = 0;
+
+    for (int b = -BUCKETS + 1; b < BUCKETS; b++)
+    {
+      int  i = slot(b);
+      long c = counts.get(i);
+
+      if (c > 0 && seen + c > rank)
+      {
+        double lo = Math.max(lower(b), min.get());
+        double hi = Math.min(upper(b), max.get());
+
+        return Math.round(lo + (hi - lo) * (rank - seen + 0.5) / c);
+      }
+      seen += c;
+    }
+    return max();
+  }
+
+  /**
+   * Return the Gini coefficient of the samples, treating the values in
+   * each bucket as equal. Only meaningful for non-negative values.
+   *
+   * @return Gini coefficient, 0 (equality) to 1
+   */
+  public double gini()
+  {
+    long   n     = count();
+    double total = sum();
+
+    if (n == 0 || total == 0)
+      return 0;
+
+    // 1 - sum of population share x (cumulative share before and after)
+    double area       = 0;
+    double cumulative = 0;
+
+    for (int b = -BUCKETS + 1; b < BUCKETS; b++)
+    {
+      int  i = slot(b);
+      long c = counts.get(i);
+
+      if (c > 0)
+      {
+        double next = cumulative + sums.get(i) / total;
+
+        area += (double) c / n * (cumulative + next);
+        cumulative = next;
+      }
+    }
+    return 1 - area;
+  }
+
+  /**
+   * Return a histogram of the samples over equal width bins.
+   *
+   * @param bins no. of bins
+   * @return histogram
+   */
+  public Histogram histogram(int bins)
+  {
+    long[] edges = new long[bins + 1];
+    long[] hist  = new long[bins];
+    long   lo    = min();
+    double width = Math.max(1, (double) (max() - lo) / bins);
+
+    for (int i = 0; i <= bins; i++)
+      edges[i] = lo + Math.round(i * width);
+
+    // Spread each bucket's count over the bins it overlaps
+    for (int b = -BUCKETS + 1; b < BUCKETS; b++)
+    {
+      int  i = slot(b);
+      long c = counts.get(i);
+
+      if (c == 0)
+        continue;
+
+      double bl    = Math.max(lower(b), lo);
+      double bh    = Math.min(upper(b), max());
+      int    first = Math.min(bins - 1, (int) ((bl - lo) / width));
+      int    last  = Math.min(bins - 1, (int) ((bh - lo) / width));
+
+      if (first == last)
+      {
+        hist[first] += c;
+        continue;
+      }
+
+      long given = 0;
+      for (int bin = first; bin < last; bin++)
+      {
+        double end = lo + (bin + 1) * width;
+        long   n   = Math.min(c - given,
+                              Math.round(c * (end - Math.max(bl, lo + bin * width))
+                                         / (bh - bl)));
+
+        hist[bin] += n;
+        given += n;
+      }
+      hist[last] += c - given;
+    }
+    return new Histogram(edges, hist);
+  }
+
+  /*
+   * Bucket numbering: b >= 0 for values >= 0, b < 0 for the mirror image
+   * negative buckets, so increasing b is increasing value.
+   */
+
+  private static int index(long v)
+  {
+    return v >= 0 ? bucket(v) : BUCKETS + bucket(v == Long.MIN_VALUE ? Long.MAX_VALUE : -v);
+  }
+
+  private static int slot(int b)
+  {
+    return b >= 0 ? b : BUCKETS - b;
+  }
+
+  private static int bucket(long v)
+  {
+    if (v < SUB)
+      return (int) v;
+
+    int octave = 63 - Long.numberOfLeadingZeros(v) - SHIFT;   // >= 0
+
+    return SUB + octave * HALF + (int) ((v >> (octave + 1)) - HALF);
+  }
+
+  // Smallest positive value in bucket i
+  private static double start(int i)
+  {
+    if (i < SUB)
+      return i;
+
+    int octave = (i - SUB) / HALF;
+    int sub    = (i - SUB) % HALF;
+
+    return (double) (HALF + sub) * (1L << (octave + 1));
+  }
+
+  private static double lower(int b)
+  {
+    return b >= 0 ? start(b) : -(start(-b + 1) - 1);
+  }
+
+  private static double upper(int b)
+  {
+    return b >= 0 ? start(b + 1) - 1 : -start(-b);
+  }
+}
@@ -7,6 +7,23 @@
  *
  * Comments:   Changes and bugs here effect the entire simulation, as 
  *             statistics are also used within models for input to behaviours
+ *
+ *             History is kept in a ring buffer of primitive longs, which
+ *             grows as needed up to historyLength and then overwrites the
+ *             oldest value. The public history list is a read only view.
+ *
+ *             Statistics declare their consumers (charts, model rules,
+ *             exporters). If lazy is set, statistics with no consumers are
+ *             dormant: they only accumulate the current step (or stepModulo
+ *             period), or if discardDormant is set ignore values entirely,
+ *             and aren't rolled over. Reading a statistic's value declares
+ *             it a model consumer, so that model code is never given a
+ *             stale value: when a dormant statistic gets a consumer it
+ *             keeps the current step's value, but discards any history
+ *             missing the steps it was dormant for.
+ *
+ *             Statistics computed from other statistics (DerivedStatistic)
+ *             override refresh(), which is called before any read.
  */
 package statistics;
 
@@ -15,8 +32,11 @@ import javafx.collections.FXCollections;
 import javafx.collections.ObservableMap;
 //import sun.reflect.generics.reflectiveObjects.NotImplementedException;
 
+import java.util.AbstractList;
+import java.util.ArrayList;
 import java.util.HashMap;
-import java.util.LinkedList;
+import java.util.HashSet;
+import java.util.List;
 
 public class Statistic
 {
@@ -24,20 +44,68 @@ public class Statistic
   public String group;                     // Chart Group statistic belongs too
   public Type   type;                      // Type of statistic
 
-  private long count;
+  private long count;                      // No. of values added (AVERAGE)
   private long value;
   private int  currentStep;
+  private int  period;                     // Step/stepModulo value is for
+  private int  appended;                   // Step history last appended
 
   public  int  stepModulo = 1;             // Accumulate statistic over N steps
 
-  private LinkedList<Long> values  = new LinkedList<>();
-  public  LinkedList<Long> history = new LinkedList<>();
-
   public static int historyLength = 120; // Keep last 120 values for ref
 
+  private long[] ring  = new long[Math.max(1, Math.min(historyLength, 16))];
+  private int    start = 0;                // Index of oldest value
+  private int    size  = 0;                // No. of values held
+
+  public  final List<Long> history = new History();  // Oldest first
+
+  /*
+   * Read only view of the history, oldest value first.
+   */
+  private class History extends AbstractList<Long>
+  {
+    @Override
+    public Long get(int i)
+    {
+      refresh();
+      if (i < 0 || i >= size)
+        throw new IndexOutOfBoundsException("Index: " + i + ", Size: " + size);
+
+      return ring[(start + i) % ring.length];
+    }
+
+    @Override
+    public int size()
+    {
+      refresh();
+      return size;
+    }
+  }
+
   public static HashMap<String, Statistic>       names    = new HashMap<>();  // Common directory
   public static ObservableMap<String, Statistic> obsNames = FXCollections.observableMap(names);
 
+  public static boolean lazy           = false;  // Only roll over consumed statistics
+  public static boolean discardDormant = false;  // Dormant statistics ignore add()
+
+  private static HashSet<Statistic> live = new HashSet<>();  // Consumed statistics
+
+  static ArrayList<StatisticRecorder> recorders = new ArrayList<>();
+
+  private final int[] consumers = new int[Consumer.values().length];
+  private int         consumed  = 0;           // Total of consumers
+
+  /*
+   * Users of a statistic's values, registered with addConsumer().
+   */
+  public enum Consumer
+  {
+    CHART,      // Displayed on a chart
+    MODEL,      // Read by agent behaviour
+    EXPORT,     // Written out by an exporter/recorder
+  }
+
   /*
    * Interface to the statistics is statistic.add(value). The operation
    * performed by the add() is controlled by the type of the statistic
@@ -74,6 +142,8 @@ public class Statistic
     type  = t;
 
     currentStep = Base.step;
+    period      = Base.step / stepModulo;
+    appended    = Base.step;
 
     // Remove statistic if it is already in the list, and replace
 
@@ -84,6 +154,9 @@ public class Statistic
     // work - chart controller must select correct stats for display.
 
     obsNames.put(name, this);
+
+    for (StatisticRecorder r : recorders)
+      r.registered(this);
   }
 
   /**
@@ -158,23 +231,199 @@ public class Statistic
   }
 
   /**
-   * Return the value for the statistic for the last round. Note: current
-   * round may not yet be completely accumulated.
+   * Declare a consumer of this statistic. Consumers are counted, so each
+   * addConsumer() should be matched by a removeConsumer() when the
+   * consumer no longer needs the statistic.
    *
-   * @return last round's value
+   * @param c Consumer type
+   * @return this statistic
    */
-  public long get()
+  public Statistic addConsumer(Consumer c)
   {
-    try
+    if (consumed == 0 && lazy)
     {
-      return history.getLast();
+      expire();
+
+      // History is missing the steps we were dormant for
+      if (size > 0 && appended < Base.step - Base.step % stepModulo)
+        discardHistory();
     }
-    catch (Exception NoSuchElementException)
+
+    consumers[c.ordinal()]++;
+
+    if (consumed++ == 0 && names.get(name) == this)
+      live.add(this);
+
+    return this;
+  }
+
+  /**
+   * Remove a consumer of this statistic.
+   *
+   * @param c Consumer type
+   */
+  public void removeConsumer(Consumer c)
+  {
+    if (consumers[c.ordinal()] == 0)
+      return;
+
+    consumers[c.ordinal()]--;
+    if (--consumed == 0)
     {
-      return 0;
+      live.remove(this);
+      period = Base.step / stepModulo;     // Value is for current period
+    }
+  }
+
+  /**
+   * Return t/f statistic has a consumer of this type.
+   *
+   * @param c Consumer type
+   * @return t/f
+   */
+  public boolean hasConsumer(Consumer c)
+  {
+    return consumers[c.ordinal()] > 0;
+  }
+
+  /**
+   * Return no. of consumers of this type.
+   *
+   * @param c Consumer type
+   * @return no. of consumers
+   */
+  protected int consumerCount(Consumer c)
+  {
+    return consumers[c.ordinal()];
+  }
+
+  /**
+   * Return t/f statistic is rolled over each step.
+   *
+   * @return t/f
+   */
+  public boolean isLive()
+  {
+    return !lazy || consumed > 0;
+  }
+
+  // Reads by model code make the statistic live
+  private void read()
+  {
+    if (consumed == 0)
+      addConsumer(Consumer.MODEL);
+    refresh();
+  }
+
+  /**
+   * Bring history up to date before it is read - used by statistics
+   * computed from other statistics rather than added to.
+   */
+  protected void refresh()
+  {
+  }
+
+  /*
+   * Dormant statistics aren't rolled over, so discard any value left from
+   * an earlier period before it is added to or read.
+   */
+  protected final void expire()
+  {
+    int p = Base.step / stepModulo;
+
+    if (p != period && lazy && consumed == 0)
+    {
+      period = p;
+      discardCurrent();
     }
   }
 
+  /**
+   * Discard the value accumulated so far for the current period.
+   */
+  protected void discardCurrent()
+  {
+    if (type != Type.NUMBER)
+    {
+      value = 0;
+      count = 0;
+    }
+  }
+
+  /**
+   * Discard history, which no longer runs up to the current step.
+   */
+  protected void discardHistory()
+  {
+    start = 0;
+    size  = 0;
+  }
+
+  /**
+   * Return no. of statistics currently rolled over each step.
+   *
+   * @return no. of live statistics
+   */
+  public static int liveCount()
+  {
+    return lazy ? live.size() : names.size();
+  }
+
+  /**
+   * Return no. of statistics not currently rolled over.
+   *
+   * @return no. of dormant statistics
+   */
+  public static int dormantCount()
+  {
+    return names.size() - liveCount();
+  }
+
+  /**
+   * Return the value for the last round without declaring a consumer -
+   * for monitoring, which shouldn't make dormant statistics live.
+   *
+   * @return value
+   */
+  public long peek()
+  {
+    refresh();
+    return size == 0 ? 0 : ring[(start + size - 1) % ring.length];
+  }
+
+  /*
+   * Return history value n back (as get(n)) and no. of values held,
+   * without declaring a consumer - for statistics computed from this one.
+   */
+  long historyAt(int n)
+  {
+    refresh();
+    if (size == 0)
+      return 0;
+    if (n >= size)
+      return ring[start];
+
+    return ring[(start + size - 1 - n) % ring.length];
+  }
+
+  int historySize()
+  {
+    refresh();
+    return size;
+  }
+
+  /**
+   * Return the value for the statistic for the last round. Note: current
+   * round may not yet be completely accumulated.
+   *
+   * @return last round's value
+   */
+  public long get()
+  {
+    read();
+    return size == 0 ? 0 : ring[(start + size - 1) % ring.length];
+  }
+
   /**
    * Return the current accumulated value for this round. Note: may
    * not be completely accumulated if called during round evaluation within
@@ -186,6 +435,10 @@ public class Statistic
 
    public long getCurrent()
    {
+      read();
+      if (type == Type.AVERAGE)
+        return count > 0 ? value / count : 0;
+
       return value;
    }
   
@@ -201,12 +454,13 @@ public class Statistic
 
   public long get(int n)
   {
-    if (history.size() == 0) // No history
+    read();
+    if (size == 0) // No history
       return 0;
-    if (n >= history.size())
-      return history.getFirst();
+    if (n >= size)
+      return ring[start];
     else
-      return history.get(history.size() - 1 - n);
+      return ring[(start + size - 1 - n) % ring.length];
   }
 
   /**
@@ -216,7 +470,8 @@ public class Statistic
    */
   public int size()
   {
-    return history.size();
+    read();
+    return size;
   }
 
   /**
@@ -229,7 +484,7 @@ public class Statistic
 
   public boolean shrinking(int n)
   {
-    return n < history.size() && history.getLast() < get(n);
+    return n < size() && get() < get(n);
   }
 
   /**
@@ -242,11 +497,14 @@ public class Statistic
 
   public boolean increasing(int n)
   {
-    return n < history.size() && history.getLast() > get(n);
+    return n < size() && get() > get(n);
   }
 
   public void inc()
   {
+    if (discardDormant && !isLive())
+      return;
+    expire();
     value++;
   }
 
@@ -257,14 +515,32 @@ public class Statistic
    */
   public void add(long stat)
   {
+    add(stat, 1);
+  }
+
+  /**
+   * Add a value to this statistic a number of times, e.g. a price once
+   * for each item traded at that price. Equivalent to calling add(stat)
+   * weight times.
+   *
+   * @param stat   Value to add
+   * @param weight No. of times to add it
+   */
+  public void add(long stat, long weight)
+  {
+    if (discardDormant && !isLive())
+      return;
+    expire();
+
     switch (type)
     {
       case COUNTER:
-        value += stat;
+        value += stat * weight;
         break;
 
       case AVERAGE:
-        values.add(stat);
+        value += stat * weight;
+        count += weight;
         break;
 
       case SINGLE:
@@ -272,18 +548,21 @@ public class Statistic
         break;
 
       case NUMBER:
-        value = value + stat;
+        value = value + stat * weight;
         break;
     }
   }
 
   public void reset()
   {
-    values.clear();
-	history.clear();
+    start = 0;
+    size  = 0;
     value = 0;
+    count = 0;
 
     currentStep = Base.step;
+    period      = Base.step / stepModulo;
+    appended    = Base.step;
   }
 
   /**
@@ -296,51 +575,83 @@ public class Statistic
 
     if((Base.step % stepModulo) == 0)
     {
-	    long avg = 0;
-
 		switch (type)
 		{
 		  case COUNTER:
 		  case SINGLE:
-			//if (value == 0 && history.size() > 0)
-			//   history.add(history.getLast());
+			//if (value == 0 && size > 0)
+			//   append(get());
 			//else
-			history.add(value);
+			append(value);
 			break;
 
 		  case AVERAGE:
-			for (Long v : values)
-			{
-                avg += v;
-            }
-
-            if (values.size() > 0)
-              history.add(avg / values.size());
+            if (count > 0)
+              append(value / count);
             else
-              history.add(0L);
+              append(0L);
 
             break;
 
           case NUMBER:
-              history.add(value);
+              append(value);
               break; 
 		}
 
         if(type != Type.NUMBER)
         {
-           values.clear();
+           count = 0;
            value = 0;
         }
+    }
+  }
 
-        if (history.size() > historyLength)
-            history.removeFirst();
+  /*
+   * Add value to history, discarding the oldest value if historyLength
+   * is exceeded.
+   */
+  void append(long v)
+  {
+    if (size == ring.length)
+    {
+      if (size >= historyLength)
+      {
+        start = (start + 1) % ring.length;
+        size--;
+      }
+      else
+      {
+        long[] grown = new long[(int) Math.min(historyLength, 2L * ring.length)];
+
+        for (int i = 0; i < size; i++)
+          grown[i] = ring[(start + i) % ring.length];
+
+        ring  = grown;
+        start = 0;
+      }
+    }
+
+    ring[(start + size) % ring.length] = v;
+    size++;
+    appended = Base.step;
+
+    while (size > historyLength)
+    {
+      start = (start + 1) % ring.length;
+      size--;
     }
   }
 
 
   public static void rolloverAll()
   {
-    names.values().forEach(statistics.Statistic::rollover);
+    if (lazy)
+      live.forEach(statistics.Statistic::rollover);
+    else
+      names.values().forEach(statistics.Statistic::rollover);
+
+    for (StatisticRecorder r : recorders)
+      r.record(Base.step - 1);      // Step just completed
   }
 
   /**
@@ -353,6 +664,12 @@ public class Statistic
         s.reset();
 
     obsNames.clear();
+    live.clear();
+
+    for (StatisticRecorder r : recorders)
+      r.reset();
+
+    DerivedStatistic.redefineAll();
   }
 
   /**
@@ -363,7 +680,14 @@ public class Statistic
 
   public static void removeStatistic(String name)
   {
-    obsNames.remove(name);
+    Statistic s = obsNames.remove(name);
+
+    if (s != null)
+    {
+      live.remove(s);
+      for (StatisticRecorder r : recorders)
+        r.removed(s);
+    }
   }
 
   public static void saveToCsv(String Filename)
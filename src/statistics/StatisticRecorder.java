@@ -0,0 +1,516 @@
+/* Program  : Threadneedle
+ *
+ * StatisticRecorder : Record selected statistics for the whole of a run,
+ *                     to a compressed columnar file.
+ *
+ * Date     : October 2026
+ *
+ * Comments : Statistics are selected by regular expressions matched
+ *            against their name or group, including statistics created
+ *            after the selection is made. Selected statistics are
+ *            registered as EXPORT consumers, and their values are
+ *            recorded after each rolloverAll().
+ *
+ *            Values are buffered in primitive columns, one per statistic
+ *            plus a step column, and written out in blocks of blockSteps
+ *            rows. Each column is delta encoded and the block is deflated.
+ *            A block is also ended early if the set of recorded statistics
+ *            changes, or the simulation is reset, so every block has a
+ *            fixed set of columns.
+ *
+ *            File format (big endian):
+ *
+ *              int magic ('TNSR'), int version
+ *
+ *            then for each block:
+ *
+ *              int run, int rows, int columns,
+ *              columns x (utf name, utf group),
+ *              int length, byte[length] deflated data
+ *
+ *            where the deflated data is rows longs of steps, followed by
+ *            rows longs for each column, each column as differences from
+ *            its previous value. The run is incremented by each simulation
+ *            reset, since steps then start again from 0.
+ *
+ *            read() returns the series in a file, and main() writes a file
+ *            out as csv.
+ */
+package statistics;
+
+import java.io.*;
+import java.util.*;
+import java.util.regex.Pattern;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
+
+public class StatisticRecorder
+{
+  public static final int MAGIC   = 0x544e5352;     // "TNSR"
+  public static final int VERSION = 1;
+
+  public static final int DEFAULT_BLOCK = 1024;     // Steps per block
+
+  private final File             file;
+  private final DataOutputStream out;
+  private final int              blockSteps;
+
+  private final ArrayList<Pattern>   patterns = new ArrayList<>();
+  private final ArrayList<Statistic> columns  = new ArrayList<>();
+
+  private final long[] steps;
+  private long[][]     values = new long[0][];
+  private int          rows   = 0;
+  private int          run    = 0;
+  private long         blocks = 0;
+
+  /**
+   * Series of values for one statistic read back from a file.
+   */
+  public static class Series
+  {
+    public final String name;
+    public final String group;
+
+    private int[]  runs   = new int[64];
+    private long[] steps  = new long[64];
+    private long[] values = new long[64];
+    private int    size   = 0;
+
+    Series(String name, String group)
+    {
+      this.name = name;
+      this.group = group;
+    }
+
+    void add(int run, long step, long value)
+    {
+      if (size == steps.length)
+      {
+        runs = Arrays.copyOf(runs, size * 2);
+        steps = Arrays.copyOf(steps, size * 2);
+        values = Arrays.copyOf(values, size * 2);
+      }
+      runs[size] = run;
+      steps[size] = step;
+      values[size++] = value;
+    }
+
+    public int size()
+    {
+      return size;
+    }
+
+    public int getRun(int i)
+    {
+      return runs[i];
+    }
+
+    public long getStep(int i)
+    {
+      return steps[i];
+    }
+
+    public long getValue(int i)
+    {
+      return values[i];
+    }
+  }
+
+  /**
+   * Constructor: start recording to a file.
+   *
+   * @param file       File to write, overwritten if it exists
+   * @param blockSteps Steps written per compressed block
+   * @throws IOException if the file can't be created
+   */
+  public StatisticRecorder(File file, int blockSteps) throws IOException
+  {
+    if (blockSteps <= 0)
+      throw new IllegalArgumentException("Block size must be positive: "
+                                         + blockSteps);
+
+    this.file = file;
+    this.blockSteps = blockSteps;
+    this.steps = new long[blockSteps];
+
+    out = new DataOutputStream(new BufferedOutputStream(
+                                   new FileOutputStream(file)));
+    out.writeInt(MAGIC);
+    out.writeInt(VERSION);
+
+    Statistic.recorders.add(this);
+  }
+
+  public StatisticRecorder(File file) throws IOException
+  {
+    this(file, DEFAULT_BLOCK);
+  }
+
+  /**
+   * Record statistics whose name or group matches a regular expression,
+   * now and when they are created.
+   *
+   * @param regex Regular expression
+   * @return no. of statistics currently matching
+   */
+  public int select(String regex)
+  {
+    Pattern p = Pattern.compile(regex);
+    int     n = 0;
+
+    patterns.add(p);
+
+    for (Statistic s : Statistic.names.values())
+    {
+      if (matches(p, s))
+      {
+        add(s);
+        n++;
+      }
+    }
+    return n;
+  }
+
+  /**
+   * Return statistics currently being recorded.
+   *
+   * @return names of recorded statistics
+   */
+  public List<String> getColumns()
+  {
+    ArrayList<String> names = new ArrayList<>();
+
+    for (Statistic s : columns)
+      names.add(s.name);
+
+    return names;
+  }
+
+  public File getFile()
+  {
+    return file;
+  }
+
+  /**
+   * Return no. of blocks written.
+   *
+   * @return blocks
+   */
+  public long getBlocks()
+  {
+    return blocks;
+  }
+
+  /**
+   * Write out buffered values, and stop recording.
+   */
+  public void close()
+  {
+    Statistic.recorders.remove(this);
+
+    flush();
+    for (Statistic s : columns)
+      s.removeConsumer(Statistic.Consumer.EXPORT);
+    columns.clear();
+
+    try
+    {
+      out.close();
+    }
+    catch (IOException e)
+    {
+      System.err.println("Failed to close statistics recording " + file
+                         + ": " + e);
+    }
+  }
+
+  /*
+   * Called by Statistic.
+   */
+
+  // New statistic registered
+  void registered(Statistic s)
+  {
+    if (s.name == null)
+      return;
+
+    for (Pattern p : patterns)
+    {
+      if (matches(p, s))
+      {
+        add(s);
+        return;
+      }
+    }
+  }
+
+  // Statistic removed from registry
+  void removed(Statistic s)
+  {
+    int i = columns.indexOf(s);
+
+    if (i >= 0)
+    {
+      flush();
+      columns.remove(i);
+      values = new long[columns.size()][];
+      s.removeConsumer(Statistic.Consumer.EXPORT);
+    }
+  }
+
+  // Simulation reset: statistics will be recreated, and steps restart
+  void reset()
+  {
+    flush();
+    columns.clear();
+    values = new long[0][];
+    run++;
+  }
+
+  // All statistics have been rolled over for a step
+  void record(long step)
+  {
+    if (columns.isEmpty())
+      return;
+
+    if (values[0] == null)
+      for (int i = 0; i < columns.size(); i++)
+        values[i] = new long[blockSteps];
+
+    steps[rows] = step;
+    for (int i = 0; i < columns.size(); i++)
+      values[i][rows] = columns.get(i).get();
+
+    if (++rows == blockSteps)
+      flush();
+  }
+
+  // Statistics without a name (f.ex. a market's before its product is
+  // set) can't be recorded
+  private static boolean matches(Pattern p, Statistic s)
+  {
+    if (s.name == null)
+      return false;
+
+    return p.matcher(s.name).matches()
+           || (s.group != null && p.matcher(s.group).matches());
+  }
+
+  private void add(Statistic s)
+  {
+    if (columns.contains(s))
+      return;
+
+    flush();
+    columns.add(s.addConsumer(Statistic.Consumer.EXPORT));
+    values = new long[columns.size()][];
+  }
+
+  /*
+   * Write out buffered rows as a block.
+   */
+  private void flush()
+  {
+    if (rows == 0)
+      return;
+
+    try
+    {
+      ByteArrayOutputStream bytes    = new ByteArrayOutputStream();
+      Deflater              deflater = new Deflater(Deflater.BEST_SPEED);
+
+      try (DataOutputStream data = new DataOutputStream(
+                                       new DeflaterOutputStream(bytes, deflater)))
+      {
+        writeColumn(data, steps);
+        for (long[] column : values)
+          writeColumn(data, column);
+      }
+      finally
+      {
+        deflater.end();
+      }
+
+      out.writeInt(run);
+      out.writeInt(rows);
+      out.writeInt(columns.size());
+      for (Statistic s : columns)
+      {
+        out.writeUTF(s.name);
+        out.writeUTF(s.group == null ? "" : s.group);
+      }
+      out.writeInt(bytes.size());
+      bytes.writeTo(out);
+      out.flush();
+
+      blocks++;
+    }
+    catch (IOException e)
+    {
+      System.err.println("Failed to write statistics recording " + file
+                         + ": " + e);
+    }
+    rows = 0;
+  }
+
+  private void writeColumn(DataOutputStream data, long[] column)
+    throws IOException
+  {
+    long last = 0;
+
+    for (int i = 0; i < rows; i++)
+    {
+      data.writeLong(column[i] - last);
+      last = column[i];
+    }
+  }
+
+  /**
+   * Read a recording.
+   *
+   * @param file File to read
+   * @return series by statistic name, in the order first recorded
+   * @throws IOException on failure, or if the file isn't a recording
+   */
+  public static LinkedHashMap<String, Series> read(File file) throws IOException
+  {
+    LinkedHashMap<String, Series> series = new LinkedHashMap<>();
+
+    try (DataInputStream in = new DataInputStream(new BufferedInputStream(
+                                                      new FileInputStream(file))))
+    {
+      if (in.readInt() != MAGIC)
+        throw new IOException(file + " is not a statistics recording");
+      if (in.readInt() != VERSION)
+        throw new IOException(file + ": unsupported recording version");
+
+      while (true)
+      {
+        int run;
+
+        try
+        {
+          run = in.readInt();
+        }
+        catch (EOFException e)
+        {
+          break;
+        }
+
+        int      rows    = in.readInt();
+        Series[] columns = new Series[in.readInt()];
+
+        for (int i = 0; i < columns.length; i++)
+        {
+          String name  = in.readUTF();
+          String group = in.readUTF();
+
+          columns[i] = series.computeIfAbsent(name, n -> new Series(n,
+                                               group.isEmpty() ? null : group));
+        }
+
+        byte[] block = new byte[in.readInt()];
+        in.readFully(block);
+
+        try (DataInputStream data = new DataInputStream(new InflaterInputStream(
+                                        new ByteArrayInputStream(block))))
+        {
+          long[] steps = readColumn(data, rows);
+
+          for (Series s : columns)
+          {
+            long[] values = readColumn(data, rows);
+
+            for (int i = 0; i < rows; i++)
+              s.add(run, steps[i], values[i]);
+          }
+        }
+      }
+    }
+    return series;
+  }
+
+  private static long[] readColumn(DataInputStream data, int rows)
+    throws IOException
+  {
+    long[] column = new long[rows];
+    long   last   = 0;
+
+    for (int i = 0; i < rows; i++)
+      column[i] = last += data.readLong();
+
+    return column;
+  }
+
+  /**
+   * Write a recording out as csv, one row per run and step, with a column
+   * for each statistic (empty where the statistic wasn't recorded).
+   *
+   * @param file File to read
+   * @param csv  Output
+   * @throws IOException on failure
+   */
+  public static void writeCsv(File file, PrintStream csv) throws IOException
+  {
+    ArrayList<Series>     series = new ArrayList<>(read(file).values());
+    TreeSet<Long>         keys   = new TreeSet<>();
+
+    for (Series s : series)
+      for (int i = 0; i < s.size(); i++)
+        keys.add(key(s.getRun(i), s.getStep(i)));
+
+    csv.print("run,step");
+    for (Series s : series)
+      csv.print("," + s.name);
+    csv.println();
+
+    int[] next = new int[series.size()];
+
+    for (long k : keys)
+    {
+      csv.print((k >>> 32) + "," + (int) k);
+
+      for (int c = 0; c < series.size(); c++)
+      {
+        Series s = series.get(c);
+
+        csv.print(',');
+        if (next[c] < s.size() && key(s.getRun(next[c]), s.getStep(next[c])) == k)
+          csv.print(s.getValue(next[c]++));
+      }
+      csv.println();
+    }
+  }
+
+  private static long key(int run, long step)
+  {
+    return ((long) run << 32) | (step & 0xffffffffL);
+  }
+
+  /**
+   * Convert a recording to csv.
+   *
+   * @param args recording [csv file]
+   */
+  public static void main(String[] args)
+  {
+    if (args.length < 1)
+    {
+      System.err.println("Usage: StatisticRecorder recording [csv]");
+      System.exit(1);
+    }
+
+    try (PrintStream csv = args.length > 1 ? new PrintStream(args[1])
+                                           : System.out)
+    {
+      writeCsv(new File(args[0]), csv);
+    }
+    catch (IOException e)
+    {
+      System.err.println("Failed to read " + args[0] + ": " + e);
+      System.exit(1);
+    }
+  }
+}